@@ -0,0 +1,78 @@
+package ru.georgeee.itmo.sem5.cg.quadtree.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+import ru.georgeee.itmo.sem5.cg.quadtree.QuadTree;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building tree from scratch: point by point and with batched {@link QuadTree#addAll}.
+ * Given ratio of added points are copies of earlier ones, so adds of duplicates (reported as false)
+ * are compared with adds of unique points on sequence of the same length
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildBenchmark {
+    private static final long SEED = 42;
+
+    @Param
+    private Implementation implementation;
+    @Param
+    private Distribution distribution;
+    @Param({"1000", "100000"})
+    private int size;
+    @Param({"0", "1e-9", "1e-3"})
+    private double precision;
+    @Param({"0", "0.3"})
+    private double duplicateRatio;
+
+    private Point2d[] points;
+    private List<Point2d> pointList;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        points = distribution.generate(size, random);
+        for (int i = 1; i < size; ++i) {
+            if (random.nextDouble() < duplicateRatio) {
+                Point2d original = points[random.nextInt(i)];
+                points[i] = new Point2d(original.getX(), original.getY());
+            }
+        }
+        pointList = Arrays.asList(points);
+    }
+
+    @Benchmark
+    public QuadTree addEach() {
+        QuadTree quadTree = implementation.create(precision);
+        for (Point2d point : points) {
+            quadTree.add(point);
+        }
+        return quadTree;
+    }
+
+    @Benchmark
+    public QuadTree addAll() {
+        QuadTree quadTree = implementation.create(precision);
+        quadTree.addAll(pointList);
+        return quadTree;
+    }
+}
@@ -0,0 +1,85 @@
+package ru.georgeee.itmo.sem5.cg.quadtree.bench;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.Random;
+
+/**
+ * Point sets, benchmarks are run on
+ */
+public enum Distribution {
+    /**
+     * Points, uniformly distributed in unit square
+     */
+    UNIFORM {
+        @Override
+        Point2d[] generate(int count, Random random) {
+            Point2d[] points = new Point2d[count];
+            for (int i = 0; i < count; ++i) {
+                points[i] = new Point2d(random.nextDouble(), random.nextDouble());
+            }
+            return points;
+        }
+    },
+    /**
+     * Points, normally distributed around few random centers
+     */
+    GAUSSIAN {
+        @Override
+        Point2d[] generate(int count, Random random) {
+            Point2d[] centers = UNIFORM.generate(CLUSTER_COUNT, random);
+            Point2d[] points = new Point2d[count];
+            for (int i = 0; i < count; ++i) {
+                points[i] = around(centers[random.nextInt(CLUSTER_COUNT)], CLUSTER_DEVIATION, random);
+            }
+            return points;
+        }
+    },
+    /**
+     * Groups of points, which differ from each other by about 10^-9, i.e. are equal or almost equal with respect to precision
+     */
+    NEAR_DUPLICATE {
+        @Override
+        Point2d[] generate(int count, Random random) {
+            Point2d[] centers = UNIFORM.generate(Math.max(1, count / DUPLICATE_GROUP_SIZE), random);
+            Point2d[] points = new Point2d[count];
+            for (int i = 0; i < count; ++i) {
+                points[i] = around(centers[random.nextInt(centers.length)], DUPLICATE_DEVIATION, random);
+            }
+            return points;
+        }
+    },
+    /**
+     * Points, condensing to the origin exponentially: i-th point lies in box of side 2^-(i mod 1000).
+     * Boxes of compressed tree form chain of depth about 1000 instead of log(n)
+     */
+    DEEP_CHAIN {
+        @Override
+        Point2d[] generate(int count, Random random) {
+            Point2d[] points = new Point2d[count];
+            for (int i = 0; i < count; ++i) {
+                int scale = -(i % CHAIN_DEPTH);
+                points[i] = new Point2d(Math.scalb(random.nextDouble(), scale), Math.scalb(random.nextDouble(), scale));
+            }
+            return points;
+        }
+    };
+
+    private static final int CLUSTER_COUNT = 10;
+    private static final double CLUSTER_DEVIATION = 0.01;
+    private static final int DUPLICATE_GROUP_SIZE = 16;
+    private static final double DUPLICATE_DEVIATION = 1.0E-9;
+    private static final int CHAIN_DEPTH = 1000;
+    private static final double CLOSEST_TO_ONE = Math.nextDown(1.0);
+
+    abstract Point2d[] generate(int count, Random random);
+
+    private static Point2d around(Point2d center, double deviation, Random random) {
+        return new Point2d(clamp(center.getX() + random.nextGaussian() * deviation),
+                clamp(center.getY() + random.nextGaussian() * deviation));
+    }
+
+    private static double clamp(double c) {
+        return Math.max(0, Math.min(CLOSEST_TO_ONE, c));
+    }
+}
@@ -0,0 +1,34 @@
+package ru.georgeee.itmo.sem5.cg.quadtree.bench;
+
+import ru.georgeee.itmo.sem5.cg.quadtree.CompressedQuadTree;
+import ru.georgeee.itmo.sem5.cg.quadtree.QuadTree;
+import ru.georgeee.itmo.sem5.cg.quadtree.SkipQuadTree;
+
+/**
+ * Trees under benchmark
+ */
+public enum Implementation {
+    COMPRESSED {
+        @Override
+        QuadTree create(double precision) {
+            return new CompressedQuadTree(precision);
+        }
+    },
+    SKIP {
+        @Override
+        QuadTree create(double precision) {
+            return new SkipQuadTree(null, precision);
+        }
+    },
+    /**
+     * Baseline, it ignores precision
+     */
+    TREE_SET {
+        @Override
+        QuadTree create(double precision) {
+            return new TreeSetQuadTree();
+        }
+    };
+
+    abstract QuadTree create(double precision);
+}
@@ -0,0 +1,68 @@
+package ru.georgeee.itmo.sem5.cg.quadtree.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+import ru.georgeee.itmo.sem5.cg.quadtree.CompressedQuadTree;
+import ru.georgeee.itmo.sem5.cg.quadtree.SkipQuadTree;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building tree from all points at once on fork/join pool of given size, to see how construction scales with threads
+ * (pool of size 1 gives baseline of the same algorithm)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelBuildBenchmark {
+    private static final long SEED = 42;
+
+    @Param
+    private Distribution distribution;
+    @Param({"100000", "1000000"})
+    private int size;
+    @Param({"1", "2", "4", "8"})
+    private int poolSize;
+
+    private List<Point2d> points;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        points = Arrays.asList(distribution.generate(size, new Random(SEED)));
+        pool = new ForkJoinPool(poolSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public SkipQuadTree skip() {
+        return new SkipQuadTree(points, null, 0, pool);
+    }
+
+    @Benchmark
+    public CompressedQuadTree compressed() {
+        return new CompressedQuadTree(points, 0, pool);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.georgeee.itmo.sem5.cg.quadtree.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+import ru.georgeee.itmo.sem5.cg.quadtree.QuadTree;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single operations on tree of fixed size: throughput and sampled latency.
+ * Tree size is kept constant, so add is measured together with removal of added point and vice versa
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuadTreeBenchmark {
+    private static final long SEED = 42;
+    /**
+     * Number of query points, should be power of two
+     */
+    private static final int QUERY_COUNT = 1 << 10;
+    /**
+     * Side of range query square
+     */
+    private static final double RANGE_SIDE = 0.01;
+
+    @Param
+    private Implementation implementation;
+    @Param
+    private Distribution distribution;
+    @Param({"1000", "100000"})
+    private int size;
+    @Param({"0", "1e-9", "1e-3"})
+    private double precision;
+
+    private QuadTree quadTree;
+    /**
+     * Points of tree (or points, equal to them)
+     */
+    private Point2d[] present;
+    /**
+     * Points of the same distribution, most of which are absent in tree
+     */
+    private Point2d[] absent;
+    private Point2d[] rangeTopLefts, rangeBottomRights;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        Point2d[] points = distribution.generate(size + QUERY_COUNT, random);
+        quadTree = implementation.create(precision);
+        quadTree.addAll(Arrays.asList(points).subList(0, size));
+        absent = Arrays.copyOfRange(points, size, size + QUERY_COUNT);
+        present = new Point2d[QUERY_COUNT];
+        rangeTopLefts = new Point2d[QUERY_COUNT];
+        rangeBottomRights = new Point2d[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            present[i] = points[random.nextInt(size)];
+            double x = random.nextDouble() * (1 - RANGE_SIDE), y = random.nextDouble() * (1 - RANGE_SIDE);
+            rangeTopLefts[i] = new Point2d(x, y);
+            rangeBottomRights[i] = new Point2d(x + RANGE_SIDE, y + RANGE_SIDE);
+        }
+    }
+
+    private int nextIndex() {
+        return index++ & (QUERY_COUNT - 1);
+    }
+
+    @Benchmark
+    public boolean containsPresent() {
+        return quadTree.contains(present[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean containsAbsent() {
+        return quadTree.contains(absent[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean addRemove() {
+        Point2d point = absent[nextIndex()];
+        return quadTree.add(point) && quadTree.remove(point);
+    }
+
+    /**
+     * Add of point, equal to point of tree, which leaves tree unchanged
+     */
+    @Benchmark
+    public boolean addPresent() {
+        return quadTree.add(present[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean removeAdd() {
+        Point2d point = present[nextIndex()];
+        return quadTree.remove(point) && quadTree.add(point);
+    }
+
+    @Benchmark
+    public void rangeQuery(Blackhole blackhole) {
+        int i = nextIndex();
+        quadTree.rangeQuery(rangeTopLefts[i], rangeBottomRights[i], blackhole::consume);
+    }
+
+    @Benchmark
+    public int rangeCount() {
+        int i = nextIndex();
+        return quadTree.rangeCount(rangeTopLefts[i], rangeBottomRights[i]);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.georgeee.itmo.sem5.cg.quadtree.bench;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+import ru.georgeee.itmo.sem5.cg.quadtree.QuadTree;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Baseline for benchmarks: points are kept in tree set, ordered by x, then by y.
+ * Points are compared exactly, range queries scan the whole x-slab of the range
+ */
+class TreeSetQuadTree implements QuadTree {
+    private final TreeSet<Point2d> points = new TreeSet<>();
+
+    @Override
+    public boolean contains(Point2d point) {
+        return points.contains(point);
+    }
+
+    @Override
+    public boolean add(Point2d point) {
+        return points.add(point);
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        return points.remove(point);
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        for (Point2d point : slab(topLeft, bottomRight)) {
+            if (point.getY() >= topLeft.getY() && point.getY() <= bottomRight.getY()) {
+                consumer.accept(point);
+            }
+        }
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        int counter = 0;
+        for (Point2d point : slab(topLeft, bottomRight)) {
+            if (point.getY() >= topLeft.getY() && point.getY() <= bottomRight.getY()) {
+                counter++;
+            }
+        }
+        return counter;
+    }
+
+    private NavigableSet<Point2d> slab(Point2d topLeft, Point2d bottomRight) {
+        if (topLeft.getX() > bottomRight.getX()) {
+            return new TreeSet<>();
+        }
+        return points.subSet(new Point2d(topLeft.getX(), Double.NEGATIVE_INFINITY), true,
+                new Point2d(bottomRight.getX(), Double.POSITIVE_INFINITY), true);
+    }
+}
@@ -15,6 +15,11 @@ public class Point2d implements Comparable<Point2d> {
         this.y = y;
     }
 
+    public double distanceSq(Point2d o) {
+        double dx = x - o.x, dy = y - o.y;
+        return dx * dx + dy * dy;
+    }
+
     @Override
     public int compareTo(Point2d o) {
         return x != o.x ? Double.compare(x, o.x) : Double.compare(y, o.y);
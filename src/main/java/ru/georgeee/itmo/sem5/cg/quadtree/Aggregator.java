@@ -0,0 +1,56 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import java.util.function.BinaryOperator;
+
+/**
+ * Monoid of aggregates of values, kept in {@link QuadTreeMap}: combine should be associative
+ * and identity should be it's neutral element, order of combined aggregates is unspecified
+ */
+public interface Aggregator<V, A> {
+    A identity();
+
+    A lift(V value);
+
+    A combine(A a, A b);
+
+    static <V> Aggregator<V, Integer> count() {
+        return new Aggregator<V, Integer>() {
+            @Override
+            public Integer identity() {
+                return 0;
+            }
+
+            @Override
+            public Integer lift(V value) {
+                return 1;
+            }
+
+            @Override
+            public Integer combine(Integer a, Integer b) {
+                return a + b;
+            }
+        };
+    }
+
+    /**
+     * Aggregates values themselves, e.g. of(0.0, Double::sum) or of(Double.NEGATIVE_INFINITY, Math::max)
+     */
+    static <V> Aggregator<V, V> of(V identity, BinaryOperator<V> combine) {
+        return new Aggregator<V, V>() {
+            @Override
+            public V identity() {
+                return identity;
+            }
+
+            @Override
+            public V lift(V value) {
+                return value;
+            }
+
+            @Override
+            public V combine(V a, V b) {
+                return combine.apply(a, b);
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import lombok.Getter;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+/**
+ * Searches for (1+eps)-approximate nearest neighbour: point p is reported,
+ * if no other point of tree is closer to query than dist(query, p) / (1 + eps).
+ * Search starts from some box, containing the query, and climbs to box's ancestors
+ * only while the ball of radius dist(query, best) / (1 + eps) isn't covered by current box.
+ * Before that, candidate may be refined by {@link #refine(BoxSector)} in boxes of upper layers,
+ * so the ball is already small, when the lowest layer is searched
+ */
+class ApproximateNearestSearch {
+    /**
+     * Levels of sub sectors, visited by {@link #refine(BoxSector)}: at most 4 + 16 sectors per box
+     */
+    private static final int REFINE_DEPTH = 2;
+
+    private final Point2d query;
+    private final double factor;
+    @Getter
+    private Point2d best;
+    private double bestDistanceSq = Double.POSITIVE_INFINITY;
+
+    ApproximateNearestSearch(Point2d query, double eps) {
+        if (eps < 0) {
+            throw new IllegalArgumentException("Negative eps passed: " + eps);
+        }
+        this.query = query;
+        this.factor = (1 + eps) * (1 + eps);
+    }
+
+    void offer(Point2d point) {
+        if (point != null) {
+            double distanceSq = point.distanceSq(query);
+            if (distanceSq < bestDistanceSq) {
+                best = point;
+                bestDistanceSq = distanceSq;
+            }
+        }
+    }
+
+    /**
+     * Offers points, lying within few levels below box, closer than current candidate allows.
+     * It's bounded local step, done in predecessor of every upper layer while descending
+     */
+    void refine(BoxSector boxSector) {
+        visit(boxSector, REFINE_DEPTH);
+    }
+
+    void search(BoxSector start) {
+        visit(start, Integer.MAX_VALUE);
+        BoxSector boxSector = start;
+        while (boxSector.getParent() != null && !isCovered(boxSector)) {
+            BoxSector parent = boxSector.getParent();
+            for (SubSectorType type : SubSectorType.values()) {
+                Sector subSector = parent.getSubSector(type);
+                if (subSector != boxSector) {
+                    visit(subSector, Integer.MAX_VALUE);
+                }
+            }
+            boxSector = parent;
+        }
+    }
+
+    private boolean isCovered(BoxSector boxSector) {
+        double distance = boxSector.distanceToBorder(query);
+        return bestDistanceSq <= distance * distance * factor;
+    }
+
+    private void visit(Sector sector, int depth) {
+        if (sector instanceof PointSector) {
+            if (!((PointSector) sector).isSentinel()) {
+                offer(((PointSector) sector).getPoint());
+            }
+        } else if (sector != null) {
+            BoxSector boxSector = (BoxSector) sector;
+            if (depth > 0 && boxSector.distanceSq(query) * factor < bestDistanceSq) {
+                for (SubSectorType type : SubSectorType.values()) {
+                    visit(boxSector.getSubSector(type), depth - 1);
+                }
+            }
+        }
+    }
+}
@@ -7,6 +7,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.georgeee.itmo.sem5.cg.common.Point2d;
 
+import java.util.function.Consumer;
+
 import static java.lang.Math.floor;
 
 /**
@@ -25,45 +27,81 @@ class BoxSector implements Sector {
     @Getter(AccessLevel.PACKAGE)
     private final double len;
     private Sector nw, ne, sw, se;
+    /**
+     * Number of points (not counting sentinels) within sector
+     */
+    @Getter
+    private int size;
     @Getter
     @Setter
     private BoxSector link;
     @Getter
     @Setter
     private BoxSector parent;
+    /**
+     * Sectors, created while adding to this box, get the same epoch.
+     * Box sets parent pointers and links only of sub sectors of it's own epoch
+     */
+    @Getter
+    @Setter(AccessLevel.PACKAGE)
+    private int epoch;
 
     public BoxSector(Point2d a, Point2d b, double precision) {
         this(new PointSector(a, precision), new PointSector(b, precision), precision);
     }
 
     public BoxSector(Sector a, PointSector b, double precision) {
+        this(a, b, precision, 0);
+    }
+
+    /**
+     * Creates box of given epoch, containing both sectors
+     */
+    BoxSector(Sector a, PointSector b, double precision, int epoch) {
         this.precision = precision;
-        double[] bounds = new double[3];
-        depth = findMinEnclosing(bounds, a.getTopLeft(), b.getPoint());
-        len = bounds[2];
+        this.epoch = epoch;
+        Point2d aCorner = a.getTopLeft(), bPoint = b.getPoint();
+        depth = Math.min(calcDepth(aCorner.getX(), bPoint.getX()), calcDepth(aCorner.getY(), bPoint.getY()));
+        double twoT = Math.pow(2.0, depth);
+        len = 1 / twoT;
         if (depth == Integer.MAX_VALUE || len < precision) {
-            throw new PointAlreadyExistsException(b.getPoint());
+            throw new IllegalArgumentException(String.format("Sector %s contains point, equal to %s", a, bPoint));
         }
-        topLeft = new Point2d(bounds[0], bounds[1]);
+        topLeft = new Point2d(floor(aCorner.getX() * twoT) / twoT, floor(aCorner.getY() * twoT) / twoT);
         try {
-            addToEmptySubSector(a, bounds[0], bounds[1], bounds[2]);
-            addToEmptySubSector(b, bounds[0], bounds[1], bounds[2]);
+            addToEmptySubSector(a, topLeft.getX(), topLeft.getY(), len);
+            addToEmptySubSector(b, topLeft.getX(), topLeft.getY(), len);
+            size = a.getSize() + b.getSize();
         } catch (IllegalStateException e) {
-            log.error("Failed to add to empty sector: a={} b={} bounds={}", a, b, bounds, e);
+            log.error("Failed to add to empty sector: a={} b={} topLeft={} len={}", a, b, topLeft, len, e);
             throw e;
         }
     }
 
+    /**
+     * Creates empty box, it should be filled with at least two sectors by {@link #attach(Sector)}
+     */
+    BoxSector(Point2d topLeft, int depth, double len, double precision) {
+        this.precision = precision;
+        this.topLeft = topLeft;
+        this.depth = depth;
+        this.len = len;
+    }
+
     static SubSectorType determineType(Point2d point, double bx, double by, double len) {
-        if (bx <= point.getX() && point.getX() < bx + len && by <= point.getY() && point.getY() < by + len) {
-            if (point.getX() < bx + len / 2) {
-                if (point.getY() < by + len / 2) {
+        return determineType(point.getX(), point.getY(), bx, by, len);
+    }
+
+    static SubSectorType determineType(double x, double y, double bx, double by, double len) {
+        if (bx <= x && x < bx + len && by <= y && y < by + len) {
+            if (x < bx + len / 2) {
+                if (y < by + len / 2) {
                     return SubSectorType.NW;
                 } else {
                     return SubSectorType.SW;
                 }
             } else {
-                if (point.getY() < by + len / 2) {
+                if (y < by + len / 2) {
                     return SubSectorType.NE;
                 } else {
                     return SubSectorType.SE;
@@ -108,12 +146,16 @@ class BoxSector implements Sector {
     }
 
     static int findMinEnclosing(double[] result, Point2d topLeft, Point2d bottomRight) {
-        int ox = calcDepth(topLeft.getX(), bottomRight.getX());
-        int oy = calcDepth(topLeft.getY(), bottomRight.getY());
+        return findMinEnclosing(result, topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY());
+    }
+
+    static int findMinEnclosing(double[] result, double ax, double ay, double bx, double by) {
+        int ox = calcDepth(ax, bx);
+        int oy = calcDepth(ay, by);
         int depth = Math.min(ox, oy);
         double twoT = Math.pow(2.0, depth);
-        double lx = floor(topLeft.getX() * twoT) / twoT;
-        double ly = floor(topLeft.getY() * twoT) / twoT;
+        double lx = floor(ax * twoT) / twoT;
+        double ly = floor(ay * twoT) / twoT;
         result[0] = lx;
         result[1] = ly;
         result[2] = 1 / twoT;
@@ -133,55 +175,106 @@ class BoxSector implements Sector {
         return false;
     }
 
-    @Override
-    public BoxSector add(Point2d point) {
+    /**
+     * Adds point, lying within this box
+     *
+     * @return false if equal point already exists
+     */
+    boolean add(Point2d point) {
+        BoxSector endSector = findLowestPredecessor(point);
+        if (endSector == null) {
+            throw new IllegalArgumentException(String.format("Point %s is outside of box %s", point, this));
+        }
+        SubSectorType endType = endSector.determineType(point);
+        Sector subSector = endSector.getSubSector(endType);
+        if (subSector instanceof PointSector && subSector.contains(point)) {
+            return false;
+        }
         PointSector pointSector = new PointSector(point, precision);
-        SubSectorType type = determineType(point);
-        if (type != null) {
-            BoxSector endSector = findLowestPredecessor(point);
-            SubSectorType endType = endSector.determineType(point);
-            Sector subSector = endSector.getSubSector(endType);
-            if (subSector == null) {
-                endSector.setSubSector(endType, pointSector);
-            } else {
-                endSector.setSubSector(endType, new BoxSector(subSector, pointSector, precision));
-            }
-            return this;
+        pointSector.setEpoch(endSector.epoch);
+        if (subSector == null) {
+            endSector.setSubSector(endType, pointSector);
         } else {
-            return new BoxSector(this, pointSector, precision);
+            BoxSector boxSector = new BoxSector(subSector, pointSector, precision, endSector.epoch);
+            endSector.setSubSector(endType, boxSector);
         }
+        endSector.updateSizes(pointSector.getSize());
+        return true;
     }
 
-    @Override
-    public Sector remove(Point2d point) {
-        BoxSector endSector = findLowestPredecessor(point);
-        if (endSector != null) {
-            SubSectorType endType = endSector.determineType(point);
-            Sector subSector = endSector.getSubSector(endType);
-            if (subSector instanceof PointSector) {
-                PointSector pointSector = (PointSector) subSector;
-                if (BoxSector.checkEquals(pointSector.getPoint(), point, precision)) {
-                    endSector.setSubSector(endType, null);
-                    if (endSector.countNonNull() < 2) {
-                        Sector nonNullSector = endSector.getNonNull();
-                        BoxSector parent = endSector.getParent();
-                        if (parent == null) {
-                            if (endSector != this) {
-                                String msg = String.format("endSector=%s != this=%s, although it's parent is null", endSector, this);
-                                throw new IllegalStateException(msg);
-                            }
-                            nonNullSector.setParent(parent);
-                            return nonNullSector;
-                        } else {
-                            SubSectorType parentType = parent.determineType(endSector.getTopLeft());
-                            parent.setSubSector(parentType, nonNullSector);
-                        }
-                    }
-                    return this;
-                }
+    /**
+     * Replaces every box on the path to point (including this one), which was created in epoch other than given,
+     * with it's copy of given epoch. Copies' sub sectors are shared with originals, and parents of shared sub sectors
+     * aren't changed (see {@link #updateTreeConstraints(SubSectorType)}), so originals stay unchanged
+     *
+     * @return this or it's copy
+     */
+    BoxSector copyPath(Point2d point, int epoch) {
+        BoxSector result = this.epoch == epoch ? this : copy(epoch);
+        BoxSector sector = result;
+        SubSectorType type;
+        while ((type = sector.determineType(point)) != null) {
+            Sector subSector = sector.getSubSector(type);
+            if (!(subSector instanceof BoxSector) || ((BoxSector) subSector).determineType(point) == null) {
+                break;
+            }
+            BoxSector boxSector = (BoxSector) subSector;
+            if (boxSector.epoch != epoch) {
+                boxSector = boxSector.copy(epoch);
+                sector.setSubSector(type, boxSector);
+            }
+            sector = boxSector;
+        }
+        return result;
+    }
+
+    private BoxSector copy(int epoch) {
+        BoxSector copy = new BoxSector(topLeft, depth, len, precision);
+        copy.epoch = epoch;
+        copy.size = size;
+        copy.link = link;
+        for (SubSectorType type : SubSectorType.values()) {
+            Sector subSector = getSubSector(type);
+            if (subSector != null) {
+                copy.setSubSector(type, subSector);
             }
         }
-        throw new PointIsAbsentException(point);
+        return copy;
+    }
+
+    /**
+     * Removes point, equal to given one. Box, left with single sub sector, is replaced with it in parent.
+     * If it has no parent (i.e. it's this box), it should be replaced by the owner of the tree
+     *
+     * @return false if there is no such point
+     */
+    boolean remove(Point2d point) {
+        BoxSector endSector = findLowestPredecessor(point);
+        if (endSector == null) {
+            return false;
+        }
+        SubSectorType endType = endSector.determineType(point);
+        Sector subSector = endSector.getSubSector(endType);
+        if (!(subSector instanceof PointSector) || !subSector.contains(point)) {
+            return false;
+        }
+        endSector.setSubSector(endType, null);
+        endSector.updateSizes(-subSector.getSize());
+        BoxSector parent = endSector.getParent();
+        if (endSector.countNonNull() < 2 && parent != null) {
+            SubSectorType parentType = parent.determineType(endSector.getTopLeft());
+            parent.setSubSector(parentType, endSector.getNonNull());
+        }
+        return true;
+    }
+
+    /**
+     * Adds delta to size of this sector and all it's ancestors
+     */
+    private void updateSizes(int delta) {
+        for (BoxSector sector = this; sector != null; sector = sector.parent) {
+            sector.size += delta;
+        }
     }
 
     Sector getNonNull() {
@@ -218,6 +311,10 @@ class BoxSector implements Sector {
         return determineType(point, topLeft.getX(), topLeft.getY(), len);
     }
 
+    private SubSectorType determineType(double x, double y) {
+        return determineType(x, y, topLeft.getX(), topLeft.getY(), len);
+    }
+
     /**
      * Sets sector as value for appropriate nw/ne/se/sw sub sector
      *
@@ -238,6 +335,14 @@ class BoxSector implements Sector {
         setSubSector(type, sector);
     }
 
+    /**
+     * Sets already built sector as appropriate sub sector of this
+     */
+    void attach(Sector sector) {
+        addToEmptySubSector(sector, topLeft.getX(), topLeft.getY(), len);
+        size += sector.getSize();
+    }
+
     private void checkSectorIsNull(SubSectorType type) {
         Sector sector = getSubSector(type);
         if (sector != null) {
@@ -246,16 +351,19 @@ class BoxSector implements Sector {
         }
     }
 
+    /**
+     * Sets parent (and link) of sub sector. Sub sector of previous epoch may be shared with snapshots,
+     * so it keeps parent of the version it was created in: parent pointers are valid only between sectors of the same epoch
+     */
     private void updateTreeConstraints(SubSectorType type) {
         Sector subSector = getSubSector(type);
-        if (subSector != null) {
-            subSector.setParent(this);
+        if (subSector == null || subSector.getEpoch() != epoch) {
+            return;
         }
-        if (subSector instanceof BoxSector) {
-            BoxSector boxSubSector = (BoxSector) getSubSector(type);
-            if (link != null) {
-                boxSubSector.setLink(link.findUnderlying(boxSubSector.topLeft, boxSubSector.depth));
-            }
+        subSector.setParent(this);
+        if (subSector instanceof BoxSector && link != null) {
+            BoxSector boxSubSector = (BoxSector) subSector;
+            boxSubSector.setLink(link.findUnderlying(boxSubSector.topLeft, boxSubSector.depth));
         }
     }
 
@@ -316,15 +424,144 @@ class BoxSector implements Sector {
         return subSector.findUnderlying(topLeft, depth);
     }
 
+    @Override
+    public void forEachPoint(Consumer<Point2d> consumer) {
+        if (nw != null) nw.forEachPoint(consumer);
+        if (ne != null) ne.forEachPoint(consumer);
+        if (sw != null) sw.forEachPoint(consumer);
+        if (se != null) se.forEachPoint(consumer);
+    }
+
+    @Override
+    public void rangeQuery(double x1, double y1, double x2, double y2, Consumer<Point2d> consumer) {
+        if (isDisjoint(x1, y1, x2, y2)) {
+            return;
+        }
+        if (isInside(x1, y1, x2, y2)) {
+            forEachPoint(consumer);
+            return;
+        }
+        if (nw != null) nw.rangeQuery(x1, y1, x2, y2, consumer);
+        if (ne != null) ne.rangeQuery(x1, y1, x2, y2, consumer);
+        if (sw != null) sw.rangeQuery(x1, y1, x2, y2, consumer);
+        if (se != null) se.rangeQuery(x1, y1, x2, y2, consumer);
+    }
+
+    @Override
+    public int rangeCount(double x1, double y1, double x2, double y2) {
+        return rangeCountApprox(x1, y1, x2, y2, 0);
+    }
+
+    /**
+     * Counts points within rectangle [x1; x2] x [y1; y2], additionally some points lying
+     * within distance slack of the rectangle may be counted.
+     * Boxes, intersecting the rectangle and lying inside it's slack-neighbourhood, are counted
+     * as a whole, so only boxes crossing border of neighbourhood are visited
+     */
+    int rangeCountApprox(double x1, double y1, double x2, double y2, double slack) {
+        if (isDisjoint(x1, y1, x2, y2)) {
+            return 0;
+        }
+        if (isInside(x1 - slack, y1 - slack, x2 + slack, y2 + slack)) {
+            return size;
+        }
+        return rangeCountApprox(nw, x1, y1, x2, y2, slack) + rangeCountApprox(ne, x1, y1, x2, y2, slack)
+                + rangeCountApprox(sw, x1, y1, x2, y2, slack) + rangeCountApprox(se, x1, y1, x2, y2, slack);
+    }
+
+    private static int rangeCountApprox(Sector sector, double x1, double y1, double x2, double y2, double slack) {
+        if (sector instanceof BoxSector) {
+            return ((BoxSector) sector).rangeCountApprox(x1, y1, x2, y2, slack);
+        }
+        return sector == null ? 0 : sector.rangeCount(x1, y1, x2, y2);
+    }
+
+    /**
+     * Finds the lowest box, containing the whole rectangle [x1; x2] x [y1; y2] (given this contains it)
+     */
+    BoxSector findLowestEnclosing(double x1, double y1, double x2, double y2) {
+        BoxSector boxSector = this;
+        while (true) {
+            SubSectorType type = boxSector.determineType(x1, y1);
+            if (type == null) {
+                return boxSector;
+            }
+            Sector subSector = boxSector.getSubSector(type);
+            if (!(subSector instanceof BoxSector) || !((BoxSector) subSector).encloses(x1, y1, x2, y2)) {
+                return boxSector;
+            }
+            boxSector = (BoxSector) subSector;
+        }
+    }
+
+    /**
+     * Checks whether rectangle [x1; x2] x [y1; y2] lies within box [bx; bx + len) x [by; by + len)
+     */
+    boolean encloses(double x1, double y1, double x2, double y2) {
+        double bx = topLeft.getX(), by = topLeft.getY();
+        return bx <= x1 && by <= y1 && x2 < bx + len && y2 < by + len;
+    }
+
+    /**
+     * Computes squared distance from point to the closest point of box
+     */
+    double distanceSq(Point2d point) {
+        double dx = distance(point.getX(), topLeft.getX(), len);
+        double dy = distance(point.getY(), topLeft.getY(), len);
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Computes distance from point, lying inside box, to the closest point of box border (0 for outer points)
+     */
+    double distanceToBorder(Point2d point) {
+        double bx = topLeft.getX(), by = topLeft.getY();
+        double dist = Math.min(Math.min(point.getX() - bx, bx + len - point.getX()),
+                Math.min(point.getY() - by, by + len - point.getY()));
+        return Math.max(dist, 0);
+    }
+
+    private static double distance(double c, double from, double len) {
+        if (c < from) {
+            return from - c;
+        }
+        return c > from + len ? c - from - len : 0;
+    }
+
+    /**
+     * Checks whether this box has no common points with rectangle [x1; x2] x [y1; y2]
+     *
+     * @see QuadBoxes#isDisjoint(double, double, double, double, double, double, double)
+     */
+    boolean isDisjoint(double x1, double y1, double x2, double y2) {
+        return QuadBoxes.isDisjoint(topLeft.getX(), topLeft.getY(), len, x1, y1, x2, y2);
+    }
+
+    /**
+     * Checks whether this box lies within rectangle [x1; x2] x [y1; y2]
+     *
+     * @see QuadBoxes#isInside(double, double, double, double, double, double, double)
+     */
+    boolean isInside(double x1, double y1, double x2, double y2) {
+        return QuadBoxes.isInside(topLeft.getX(), topLeft.getY(), len, x1, y1, x2, y2);
+    }
+
     @Override
     public String toString() {
         return String.format("BoxSector(bx=%f, by=%f, len=%f, depth=%d)", topLeft.getX(), topLeft.getY(), len, depth);
     }
 
     public static boolean checkEquals(Point2d p, Point2d q, double precision) {
-        double[] bounds = new double[3];
-        int depth = BoxSector.findMinEnclosing(bounds, p, q);
-        return depth == Integer.MAX_VALUE || bounds[2] < precision;
+        return checkEquals(p.getX(), p.getY(), q.getX(), q.getY(), precision);
+    }
+
+    /**
+     * Points are equal, if the smallest box, containing both of them, has side less than precision.
+     * Side is 2^-depth, computed by {@link Math#scalb(double, int)}, so no allocation or {@link Math#pow(double, double)} is done
+     */
+    static boolean checkEquals(double px, double py, double qx, double qy, double precision) {
+        int depth = Math.min(calcDepth(px, qx), calcDepth(py, qy));
+        return depth == Integer.MAX_VALUE || Math.scalb(1.0, -depth) < precision;
     }
 
 }
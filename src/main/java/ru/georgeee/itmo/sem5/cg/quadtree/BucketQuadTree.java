@@ -0,0 +1,383 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import lombok.Getter;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Compressed quad tree with bucketed leaves: leaf keeps up to capacity points in primitive arrays
+ * and is split into box (the lowest one, containing all it's points) with leaves in quadrants only when it overflows.
+ * Every box contains more than capacity points: box, left with capacity points or less after removal,
+ * is merged back into single leaf. So tree has about capacity times less nodes than {@link CompressedQuadTree},
+ * and lowest levels of traversal are linear scans of arrays.
+ * Boxes are the same cells as {@link BoxSector}s, but are kept in own nodes (see {@link QuadBoxes})
+ */
+public class BucketQuadTree implements QuadTree {
+    private static final int INITIAL_LEAF_CAPACITY = 4;
+
+    @Getter
+    private final int leafCapacity;
+    private final double precision;
+    private Node root;
+
+    public BucketQuadTree(int leafCapacity) {
+        this(leafCapacity, 0);
+    }
+
+    public BucketQuadTree(int leafCapacity, double precision) {
+        if (leafCapacity < 1) {
+            throw new IllegalArgumentException(String.format("Illegal leaf capacity %d", leafCapacity));
+        }
+        this.leafCapacity = leafCapacity;
+        this.precision = precision;
+    }
+
+    public int size() {
+        return root == null ? 0 : root.getSize();
+    }
+
+    private boolean checkEquals(double px, double py, double qx, double qy) {
+        //With zero precision only the same points are equal
+        return precision == 0 ? px == qx && py == qy : BoxSector.checkEquals(px, py, qx, qy, precision);
+    }
+
+    /**
+     * Descends to the node, which should contain point: leaf or box, not containing point, or null for empty quadrant
+     */
+    private Node descend(Point2d point) {
+        Node node = root;
+        while (node instanceof Box) {
+            SubSectorType type = ((Box) node).determineType(point.getX(), point.getY());
+            if (type == null) {
+                break;
+            }
+            node = ((Box) node).children[type.ordinal()];
+        }
+        return node;
+    }
+
+    @Override
+    public boolean contains(Point2d point) {
+        Node node = descend(point);
+        return node instanceof Leaf && ((Leaf) node).indexOf(point.getX(), point.getY()) >= 0;
+    }
+
+    @Override
+    public boolean add(Point2d point) {
+        double x = point.getX(), y = point.getY();
+        Box parent = null;
+        int index = 0;
+        Node node = root;
+        while (node instanceof Box) {
+            SubSectorType type = ((Box) node).determineType(x, y);
+            if (type == null) {
+                break;
+            }
+            parent = (Box) node;
+            index = type.ordinal();
+            node = parent.children[index];
+        }
+        Node replacement;
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            if (leaf.indexOf(x, y) >= 0) {
+                return false;
+            }
+            if (leaf.count < leafCapacity) {
+                leaf.add(x, y);
+                updateSizes(parent, 1);
+                return true;
+            }
+            leaf.add(x, y);
+            replacement = split(leaf);
+        } else {
+            Leaf leaf = new Leaf();
+            leaf.add(x, y);
+            if (node == null) {
+                replacement = leaf;
+            } else {
+                //Box doesn't contain point, so they are joined by the lowest box, containing both
+                Box box = (Box) node;
+                double[] bounds = new double[3];
+                BoxSector.findMinEnclosing(bounds, box.x, box.y, x, y);
+                Box joint = new Box(bounds[0], bounds[1], bounds[2]);
+                joint.attach(box, box.x, box.y);
+                joint.attach(leaf, x, y);
+                replacement = joint;
+            }
+        }
+        replace(parent, index, replacement);
+        updateSizes(parent, 1);
+        return true;
+    }
+
+    /**
+     * Splits overflown leaf into the lowest box, containing all it's points, with leaves in quadrants
+     */
+    private Box split(Leaf leaf) {
+        double[] bounds = new double[3];
+        int minDepth = Integer.MAX_VALUE;
+        double bx = 0, by = 0, len = 0;
+        for (int i = 1; i < leaf.count; ++i) {
+            int depth = BoxSector.findMinEnclosing(bounds, leaf.xs[0], leaf.ys[0], leaf.xs[i], leaf.ys[i]);
+            if (depth < minDepth) {
+                minDepth = depth;
+                bx = bounds[0];
+                by = bounds[1];
+                len = bounds[2];
+            }
+        }
+        Box box = new Box(bx, by, len);
+        for (int i = 0; i < leaf.count; ++i) {
+            int index = box.determineType(leaf.xs[i], leaf.ys[i]).ordinal();
+            if (box.children[index] == null) {
+                Leaf child = new Leaf();
+                child.parent = box;
+                box.children[index] = child;
+            }
+            ((Leaf) box.children[index]).add(leaf.xs[i], leaf.ys[i]);
+        }
+        box.size = leaf.count;
+        return box;
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        Node node = descend(point);
+        if (!(node instanceof Leaf)) {
+            return false;
+        }
+        Leaf leaf = (Leaf) node;
+        int index = leaf.indexOf(point.getX(), point.getY());
+        if (index < 0) {
+            return false;
+        }
+        leaf.remove(index);
+        updateSizes(leaf.parent, -1);
+        //The highest box, left with capacity points or less, is merged into leaf
+        Box merged = null;
+        for (Box box = leaf.parent; box != null; box = box.parent) {
+            if (box.size <= leafCapacity) {
+                merged = box;
+            }
+        }
+        if (merged != null) {
+            Leaf mergedLeaf = new Leaf();
+            merged.collectPoints(mergedLeaf);
+            replace(merged.parent, merged.parent == null ? 0 : QuadBoxes.indexOf(merged.parent.children, merged), mergedLeaf);
+            return true;
+        }
+        Box parent = leaf.parent;
+        if (leaf.count == 0) {
+            if (parent == null) {
+                root = null;
+                return true;
+            }
+            Node remaining = QuadBoxes.removeChild(parent.children, QuadBoxes.indexOf(parent.children, leaf));
+            if (remaining != null) {
+                //Box with one child is replaced with it
+                replace(parent.parent, parent.parent == null ? 0 : QuadBoxes.indexOf(parent.parent.children, parent), remaining);
+            }
+        }
+        return true;
+    }
+
+    private void replace(Box parent, int index, Node node) {
+        node.parent = parent;
+        if (parent == null) {
+            root = node;
+        } else {
+            parent.children[index] = node;
+        }
+    }
+
+    private static void updateSizes(Box box, int delta) {
+        for (; box != null; box = box.parent) {
+            box.size += delta;
+        }
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        if (root != null) {
+            root.rangeQuery(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), consumer);
+        }
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        if (root != null) {
+            return root.rangeCount(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY());
+        }
+        return 0;
+    }
+
+    /**
+     * Counts boxes of tree
+     */
+    int getBoxCount() {
+        return root instanceof Box ? ((Box) root).getBoxCount() : 0;
+    }
+
+    private abstract static class Node {
+        Box parent;
+
+        abstract int getSize();
+
+        abstract void rangeQuery(double x1, double y1, double x2, double y2, Consumer<Point2d> consumer);
+
+        abstract int rangeCount(double x1, double y1, double x2, double y2);
+    }
+
+    private class Leaf extends Node {
+        private double[] xs = new double[Math.min(INITIAL_LEAF_CAPACITY, leafCapacity + 1)];
+        private double[] ys = new double[xs.length];
+        private int count;
+
+        /**
+         * Adds point, leaf may temporarily hold capacity + 1 points before split
+         */
+        void add(double x, double y) {
+            if (count == xs.length) {
+                int length = Math.min(xs.length * 2, leafCapacity + 1);
+                xs = Arrays.copyOf(xs, length);
+                ys = Arrays.copyOf(ys, length);
+            }
+            xs[count] = x;
+            ys[count] = y;
+            count++;
+        }
+
+        /**
+         * Removes point, replacing it with the last one
+         */
+        void remove(int index) {
+            count--;
+            xs[index] = xs[count];
+            ys[index] = ys[count];
+        }
+
+        int indexOf(double x, double y) {
+            for (int i = 0; i < count; ++i) {
+                if (checkEquals(xs[i], ys[i], x, y)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int getSize() {
+            return count;
+        }
+
+        @Override
+        void rangeQuery(double x1, double y1, double x2, double y2, Consumer<Point2d> consumer) {
+            for (int i = 0; i < count; ++i) {
+                double x = xs[i], y = ys[i];
+                if (x1 <= x && x <= x2 && y1 <= y && y <= y2) {
+                    consumer.accept(new Point2d(x, y));
+                }
+            }
+        }
+
+        @Override
+        int rangeCount(double x1, double y1, double x2, double y2) {
+            int counter = 0;
+            for (int i = 0; i < count; ++i) {
+                double x = xs[i], y = ys[i];
+                if (x1 <= x && x <= x2 && y1 <= y && y <= y2) {
+                    counter++;
+                }
+            }
+            return counter;
+        }
+    }
+
+    private static class Box extends Node {
+        private final double x, y, len;
+        /**
+         * Sub sectors, indexed by ordinal of {@link SubSectorType}
+         */
+        private final Node[] children = new Node[4];
+        private int size;
+
+        Box(double x, double y, double len) {
+            this.x = x;
+            this.y = y;
+            this.len = len;
+        }
+
+        SubSectorType determineType(double px, double py) {
+            return BoxSector.determineType(px, py, x, y, len);
+        }
+
+        /**
+         * Sets node, which top left corner (or any point) is (cx, cy), as sub sector
+         */
+        void attach(Node node, double cx, double cy) {
+            children[determineType(cx, cy).ordinal()] = node;
+            node.parent = this;
+            size += node.getSize();
+        }
+
+        void collectPoints(Leaf leaf) {
+            for (Node child : children) {
+                if (child instanceof Box) {
+                    ((Box) child).collectPoints(leaf);
+                } else if (child != null) {
+                    Leaf childLeaf = (Leaf) child;
+                    for (int i = 0; i < childLeaf.count; ++i) {
+                        leaf.add(childLeaf.xs[i], childLeaf.ys[i]);
+                    }
+                }
+            }
+        }
+
+        int getBoxCount() {
+            int counter = 1;
+            for (Node child : children) {
+                if (child instanceof Box) {
+                    counter += ((Box) child).getBoxCount();
+                }
+            }
+            return counter;
+        }
+
+        @Override
+        int getSize() {
+            return size;
+        }
+
+        @Override
+        void rangeQuery(double x1, double y1, double x2, double y2, Consumer<Point2d> consumer) {
+            if (QuadBoxes.isDisjoint(x, y, len, x1, y1, x2, y2)) {
+                return;
+            }
+            for (Node child : children) {
+                if (child != null) {
+                    child.rangeQuery(x1, y1, x2, y2, consumer);
+                }
+            }
+        }
+
+        @Override
+        int rangeCount(double x1, double y1, double x2, double y2) {
+            if (QuadBoxes.isDisjoint(x, y, len, x1, y1, x2, y2)) {
+                return 0;
+            }
+            if (QuadBoxes.isInside(x, y, len, x1, y1, x2, y2)) {
+                return size;
+            }
+            int counter = 0;
+            for (Node child : children) {
+                if (child != null) {
+                    counter += child.rangeCount(x1, y1, x2, y2);
+                }
+            }
+            return counter;
+        }
+    }
+}
@@ -2,10 +2,28 @@ package ru.georgeee.itmo.sem5.cg.quadtree;
 
 import ru.georgeee.itmo.sem5.cg.common.Point2d;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
 public class CompressedQuadTree implements QuadTree {
     private final double precision;
-    private Sector root;
-
+    Sector root;
+    /**
+     * Number of snapshots taken: boxes of previous epochs are shared with snapshots and are copied before change
+     */
+    private int epoch;
+    /**
+     * Number of removals: removal may detach boxes, kept by cursors
+     */
+    private int modCount;
 
     public CompressedQuadTree() {
         this(0);
@@ -15,6 +33,47 @@ public class CompressedQuadTree implements QuadTree {
         this.precision = precision;
     }
 
+    /**
+     * Builds tree from points at once: points are sorted in Z-order and then tree is built bottom-up
+     * in one pass. Resulting tree is the same as after adding points one by one
+     */
+    public CompressedQuadTree(Collection<Point2d> points, double precision) {
+        this.precision = precision;
+        Point2d[] array = points.toArray(new Point2d[points.size()]);
+        int[] order = MortonOrder.sortedDistinct(array, precision);
+        PointSector[] leaves = new PointSector[order.length];
+        for (int i = 0; i < order.length; ++i) {
+            leaves[i] = new PointSector(array[order[i]], precision);
+        }
+        root = buildSorted(leaves, leaves.length, precision);
+    }
+
+    /**
+     * Builds tree from points at once on fork/join pool: points are sorted in Z-order in parallel,
+     * then subtrees of quadrants are built in parallel (see {@link ParallelQuadTreeBuilder}).
+     * Resulting tree is the same as after adding points one by one
+     */
+    public CompressedQuadTree(Collection<Point2d> points, double precision, ForkJoinPool pool) {
+        this.precision = precision;
+        Point2d[] array = points.toArray(new Point2d[points.size()]);
+        root = ParallelQuadTreeBuilder.buildSorted(array, ParallelQuadTreeBuilder.sortedDistinct(array, precision, pool), precision, pool);
+    }
+
+    /**
+     * Builds compressed quad tree from leaves, sorted in Z-order and pairwise non equal
+     */
+    static Sector buildSorted(PointSector[] leaves, int count, double precision) {
+        return buildSorted(leaves, 0, count, precision);
+    }
+
+    static Sector buildSorted(PointSector[] leaves, int from, int to, double precision) {
+        SortedTreeBuilder builder = new SortedTreeBuilder(precision);
+        for (int i = from; i < to; ++i) {
+            builder.append(leaves[i]);
+        }
+        return builder.build();
+    }
+
     @Override
     public boolean contains(Point2d point) {
         if (root != null) {
@@ -23,30 +82,221 @@ public class CompressedQuadTree implements QuadTree {
         return false;
     }
 
+    /**
+     * Returns read only view of current state of tree in O(1).
+     * Further changes of this tree copy boxes on their path, shared with snapshot, instead of changing them,
+     * and don't touch parent pointers of shared sectors, so snapshot may be read from other threads, while this one is being changed
+     */
+    public CompressedQuadTreeSnapshot snapshot() {
+        epoch++;
+        return new CompressedQuadTreeSnapshot(root, precision);
+    }
+
+    /**
+     * Writes tree to file in compact preorder format, which can be opened without rebuilding by {@link MappedQuadTree}
+     */
+    public void save(Path path) throws IOException {
+        MappedQuadTree.save(root, precision, path);
+    }
+
+    /**
+     * Makes path to point belong to current epoch, so it can be changed in place
+     */
+    private void copyPath(Point2d point) {
+        if (root instanceof BoxSector) {
+            root = ((BoxSector) root).copyPath(point, epoch);
+        }
+    }
+
     @Override
     public boolean add(Point2d point) {
-        if (root == null) {
-            root = new PointSector(point, precision);
-        } else {
-            try {
-                root = root.add(point);
-            } catch (PointAlreadyExistsException e) {
+        copyPath(point);
+        if (root instanceof BoxSector && ((BoxSector) root).encloses(point.getX(), point.getY(), point.getX(), point.getY())) {
+            return ((BoxSector) root).add(point);
+        }
+        if (root != null && root.contains(point)) {
+            return false;
+        }
+        PointSector pointSector = new PointSector(point, precision);
+        pointSector.setEpoch(epoch);
+        root = root == null ? pointSector : new BoxSector(root, pointSector, precision, epoch);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        copyPath(point);
+        if (root instanceof PointSector) {
+            if (!root.contains(point)) {
                 return false;
             }
+            root = null;
+        } else if (root instanceof BoxSector) {
+            BoxSector boxSector = (BoxSector) root;
+            if (!boxSector.remove(point)) {
+                return false;
+            }
+            if (boxSector.countNonNull() < 2) {
+                root = boxSector.getNonNull();
+                if (root.getEpoch() == epoch) {
+                    root.setParent(null);
+                }
+            }
+        } else {
+            return false;
         }
+        modCount++;
         return true;
     }
 
     @Override
-    public boolean remove(Point2d point) {
-        if (root != null) {
-            try {
-                root = root.remove(point);
-                return true;
-            } catch (PointIsAbsentException e) {
+    public int addAll(Collection<Point2d> points) {
+        return cursor().addAll(points);
+    }
+
+    @Override
+    public int removeAll(Collection<Point2d> points) {
+        return cursor().removeAll(points);
+    }
+
+    @Override
+    public boolean containsAll(Collection<Point2d> points) {
+        return cursor().containsAll(points);
+    }
+
+    /**
+     * Returns cursor, keeping the lowest box, reached by the last operation.
+     * Finger is kept only if it's box of current epoch: such box and all it's ancestors have valid parent pointers
+     */
+    public QuadTreeCursor cursor() {
+        return new Cursor();
+    }
+
+    private class Cursor implements QuadTreeCursor {
+        private BoxSector finger;
+        private int expectedModCount;
+
+        /**
+         * Climbs from finger to the lowest box, containing point.
+         * Without valid finger it's the root: root of previous epoch keeps parent from snapshot, so it's not climbed from
+         *
+         * @return such box or root box, if it doesn't contain point (or null if root is not a box)
+         */
+        private BoxSector locate(Point2d point) {
+            if (!(root instanceof BoxSector)) {
+                return null;
+            }
+            BoxSector boxSector = finger;
+            if (boxSector == null || expectedModCount != modCount || boxSector.getEpoch() != epoch) {
+                return (BoxSector) root;
+            }
+            double x = point.getX(), y = point.getY();
+            while (!boxSector.encloses(x, y, x, y) && boxSector.getParent() != null) {
+                boxSector = boxSector.getParent();
             }
+            return boxSector;
         }
-        return false;
+
+        private boolean encloses(BoxSector boxSector, Point2d point) {
+            return boxSector != null && boxSector.encloses(point.getX(), point.getY(), point.getX(), point.getY());
+        }
+
+        @Override
+        public boolean contains(Point2d point) {
+            BoxSector boxSector = locate(point);
+            if (!encloses(boxSector, point)) {
+                return CompressedQuadTree.this.contains(point);
+            }
+            finger = boxSector.findLowestPredecessor(point);
+            return finger.contains(point);
+        }
+
+        @Override
+        public boolean add(Point2d point) {
+            BoxSector boxSector = locate(point);
+            if (!encloses(boxSector, point) || boxSector.getEpoch() != epoch) {
+                finger = null;
+                return CompressedQuadTree.this.add(point);
+            }
+            //Box of current epoch has all it's ancestors of current epoch, so only path below it is to be copied
+            boxSector = boxSector.copyPath(point, epoch);
+            finger = boxSector.findLowestPredecessor(point);
+            return finger.add(point);
+        }
+
+        @Override
+        public boolean remove(Point2d point) {
+            BoxSector boxSector = locate(point);
+            if (!encloses(boxSector, point) || boxSector == root || boxSector.getEpoch() != epoch) {
+                boolean removed = CompressedQuadTree.this.remove(point);
+                finger = null;
+                expectedModCount = modCount;
+                return removed;
+            }
+            boxSector = boxSector.copyPath(point, epoch);
+            BoxSector pred = boxSector.findLowestPredecessor(point);
+            if (!pred.remove(point)) {
+                finger = pred;
+                return false;
+            }
+            finger = pred.countNonNull() < 2 ? pred.getParent() : pred;
+            expectedModCount = ++modCount;
+            return true;
+        }
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        if (root != null) {
+            root.rangeQuery(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), consumer);
+        }
+    }
+
+    /**
+     * Tree shouldn't be modified while spliterator is in use (snapshot may be traversed instead)
+     */
+    @Override
+    public Spliterator<Point2d> rangeSpliterator(Point2d topLeft, Point2d bottomRight) {
+        return new SectorSpliterator(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), root);
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        if (root != null) {
+            return root.rangeCount(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY());
+        }
+        return 0;
+    }
+
+    /**
+     * Finds k points of tree, closest to the given one (or all points, if tree contains less than k)
+     *
+     * @return points, sorted by increasing distance
+     */
+    @Override
+    public List<Point2d> nearest(Point2d point, int k) {
+        List<Point2d> result = new ArrayList<>();
+        Iterator<Point2d> iterator = nearestIterator(point);
+        while (result.size() < k && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    /**
+     * Returns iterator over points of tree in order of increasing distance to the given point.
+     * Tree shouldn't be modified while iterator is in use
+     */
+    public Iterator<Point2d> nearestIterator(Point2d point) {
+        return new NearestIterator(root, point);
+    }
+
+    /**
+     * Passes to consumer every pair of points (a, b), such that a is from this tree, b is from other one
+     * and dist(a, b) &lt;= r. Pairs are streamed, while both trees are descended together (see {@link DistanceJoin})
+     */
+    public void distanceJoin(CompressedQuadTree other, double r, BiConsumer<Point2d, Point2d> consumer) {
+        new DistanceJoin(r, consumer).join(root, other.root);
     }
 
 }
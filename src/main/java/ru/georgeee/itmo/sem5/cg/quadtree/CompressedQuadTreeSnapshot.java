@@ -0,0 +1,122 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import lombok.Getter;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Read only state of {@link CompressedQuadTree}, taken by {@link CompressedQuadTree#snapshot()}.
+ * It's sectors are shared with the tree and with other snapshots and are never changed,
+ * so snapshot may be read from any thread, while the tree is being changed.
+ * Shared sector keeps parent of the version it was created in, so snapshot doesn't use parent pointers:
+ * batched operations keep explicit path from the root instead of climbing from finger
+ */
+public class CompressedQuadTreeSnapshot implements QuadTreeView {
+    @Getter
+    private final double precision;
+    final Sector root;
+
+    CompressedQuadTreeSnapshot(Sector root, double precision) {
+        this.root = root;
+        this.precision = precision;
+    }
+
+    @Override
+    public boolean contains(Point2d point) {
+        return root != null && root.contains(point);
+    }
+
+    /**
+     * Checks points, going through them in Z-order. Path of boxes from the root to the lowest box, containing previous point,
+     * is kept, for the next point it's shortened until the last box contains the point, then it's continued down
+     */
+    @Override
+    public boolean containsAll(Collection<Point2d> points) {
+        if (!(root instanceof BoxSector)) {
+            return QuadTreeView.super.containsAll(points);
+        }
+        Point2d[] array = points.toArray(new Point2d[points.size()]);
+        Deque<BoxSector> path = new ArrayDeque<>();
+        for (int index : MortonOrder.sortedOrder(array)) {
+            Point2d point = array[index];
+            double x = point.getX(), y = point.getY();
+            while (!path.isEmpty() && !path.peek().encloses(x, y, x, y)) {
+                path.pop();
+            }
+            if (path.isEmpty()) {
+                if (!((BoxSector) root).encloses(x, y, x, y)) {
+                    return false;
+                }
+                path.push((BoxSector) root);
+            }
+            Sector subSector;
+            while (true) {
+                BoxSector boxSector = path.peek();
+                Point2d topLeft = boxSector.getTopLeft();
+                subSector = boxSector.getSubSector(BoxSector.determineType(point, topLeft.getX(), topLeft.getY(), boxSector.getLen()));
+                if (!(subSector instanceof BoxSector) || !((BoxSector) subSector).encloses(x, y, x, y)) {
+                    break;
+                }
+                path.push((BoxSector) subSector);
+            }
+            if (!(subSector instanceof PointSector) || !subSector.contains(point)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        if (root != null) {
+            root.rangeQuery(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), consumer);
+        }
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        if (root != null) {
+            return root.rangeCount(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY());
+        }
+        return 0;
+    }
+
+    @Override
+    public Spliterator<Point2d> rangeSpliterator(Point2d topLeft, Point2d bottomRight) {
+        return new SectorSpliterator(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), root);
+    }
+
+    /**
+     * @see CompressedQuadTree#nearest(Point2d, int)
+     */
+    @Override
+    public List<Point2d> nearest(Point2d point, int k) {
+        List<Point2d> result = new ArrayList<>();
+        Iterator<Point2d> iterator = nearestIterator(point);
+        while (result.size() < k && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        return result;
+    }
+
+    public Iterator<Point2d> nearestIterator(Point2d point) {
+        return new NearestIterator(root, point);
+    }
+
+    /**
+     * @see CompressedQuadTree#save(Path)
+     */
+    public void save(Path path) throws IOException {
+        MappedQuadTree.save(root, precision, path);
+    }
+}
@@ -0,0 +1,393 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import static ru.georgeee.itmo.sem5.cg.quadtree.SkipQuadTree.CLOSEST_TO_ONE;
+import static ru.georgeee.itmo.sem5.cg.quadtree.SkipQuadTree.ONE_POINT;
+import static ru.georgeee.itmo.sem5.cg.quadtree.SkipQuadTree.ZERO_POINT;
+
+/**
+ * Thread-safe skip quad tree.
+ * <p>
+ * Sub sectors of boxes are kept in atomic arrays and every structural change is published by a single write,
+ * so readers never take locks: they descend to the lowest box, containing the point, read it's sub sector
+ * and retry only if box has been removed meanwhile. Writers lock only the predecessor box in each layer
+ * (and it's parent, if box is to be replaced with it's remaining sub sector), locks are always taken
+ * from ancestor to descendant. Removed boxes are marked dead, their parent and link pointers are kept,
+ * so stale references, kept by other threads, still lead to live boxes.
+ * <p>
+ * A point belongs to the tree iff it's present in the lowest layer: points are added to layers bottom-up
+ * and removed top-down. Links are hints for descent: link of a box refers to a box of the lower layer,
+ * containing it (the one with the same corner and depth, unless concurrent removal has changed lower layer).
+ * Coin should be thread-safe, by default {@link ThreadLocalRandom} is used.
+ * Unlike {@link SkipQuadTree}, boxes don't keep sizes (as updating them would make root a point of contention),
+ * range queries are weakly consistent
+ */
+public class ConcurrentSkipQuadTree implements QuadTree {
+    private final Coin coin;
+    private final double precision;
+
+    private final AtomicReference<Point2d> zeroPoint = new AtomicReference<>();
+    private final AtomicReference<Point2d> onePoint = new AtomicReference<>();
+
+    /**
+     * Heads of layers, array is replaced under lock of this, when a layer is added
+     */
+    private volatile Box[] layers = new Box[0];
+
+    public ConcurrentSkipQuadTree() {
+        this(null, 0);
+    }
+
+    public ConcurrentSkipQuadTree(Coin coin) {
+        this(coin, 0);
+    }
+
+    public ConcurrentSkipQuadTree(Coin coin, double precision) {
+        this.coin = coin != null ? coin : (i, p) -> ThreadLocalRandom.current().nextBoolean();
+        this.precision = precision;
+    }
+
+    @Override
+    public boolean contains(Point2d point) {
+        if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
+            return zeroPoint.get() != null;
+        }
+        if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
+            return onePoint.get() != null;
+        }
+        Box[] layers = this.layers;
+        if (layers.length == 0) return false;
+        checkWithinUnitSquare(point);
+        Box[] predChain = getPredecessorChain(layers, point);
+        Object subSector = readSubSector(predChain[0], point);
+        return subSector instanceof Point2d && BoxSector.checkEquals((Point2d) subSector, point, precision);
+    }
+
+    @Override
+    public boolean add(Point2d point) {
+        if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
+            return zeroPoint.compareAndSet(null, point);
+        }
+        if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
+            return onePoint.compareAndSet(null, point);
+        }
+        checkWithinUnitSquare(point);
+        Box[] layers = this.layers;
+        if (layers.length == 0) {
+            layers = addLayer(0);
+        }
+        Box[] predChain = getPredecessorChain(layers, point);
+        if (!addToLayer(predChain[0], point, layers, 0)) {
+            return false;
+        }
+        for (int i = 1; coin.decide(i, point); ++i) {
+            if (i >= layers.length) {
+                layers = addLayer(i);
+            }
+            //Layers could have been added concurrently after predecessor chain was found
+            Box hint = i < predChain.length ? predChain[i] : layers[i];
+            //Point could be left in upper layer by concurrent remove, it's removed with the next remove
+            addToLayer(hint, point, layers, i);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
+            return zeroPoint.getAndSet(null) != null;
+        }
+        if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
+            return onePoint.getAndSet(null) != null;
+        }
+        Box[] layers = this.layers;
+        if (layers.length == 0) return false;
+        checkWithinUnitSquare(point);
+        Box[] predChain = getPredecessorChain(layers, point);
+        for (int i = layers.length - 1; i > 0; --i) {
+            removeFromLayer(predChain[i], point);
+        }
+        return removeFromLayer(predChain[0], point);
+    }
+
+    private static void checkWithinUnitSquare(Point2d point) {
+        if (Box.quadrant(0, 0, 1, point.getX(), point.getY()) < 0) {
+            throw new IllegalArgumentException("Point is outside of unit square: " + point);
+        }
+    }
+
+    private synchronized Box[] addLayer(int index) {
+        Box[] layers = this.layers;
+        if (index < layers.length) {
+            return layers;
+        }
+        Box[] newLayers = Arrays.copyOf(layers, index + 1);
+        for (int i = layers.length; i <= index; ++i) {
+            Box head = newBox(ZERO_POINT, ONE_POINT);
+            head.link = i > 0 ? newLayers[i - 1] : null;
+            newLayers[i] = head;
+        }
+        this.layers = newLayers;
+        return newLayers;
+    }
+
+    private Box[] getPredecessorChain(Box[] layers, Point2d point) {
+        Box[] predChain = new Box[layers.length];
+        Box hint = layers[layers.length - 1];
+        for (int i = layers.length - 1; i >= 0; --i) {
+            Box pred = findLowestPredecessor(hint, point);
+            predChain[i] = pred;
+            if (i > 0) {
+                Box link = pred.link;
+                hint = link != null ? link : layers[i - 1];
+            }
+        }
+        return predChain;
+    }
+
+    /**
+     * Finds the lowest box, containing point, starting from box (or from it's closest live ancestor)
+     */
+    private static Box findLowestPredecessor(Box box, Point2d point) {
+        while (box.dead) {
+            box = box.parent;
+        }
+        while (true) {
+            Object subSector = box.children.get(box.quadrant(point));
+            if (!containsPoint(subSector, point)) {
+                return box;
+            }
+            box = (Box) subSector;
+        }
+    }
+
+    private static boolean containsPoint(Object subSector, Point2d point) {
+        return subSector instanceof Box && ((Box) subSector).quadrant(point) >= 0;
+    }
+
+    /**
+     * Reads sub sector of the lowest live box, containing point
+     *
+     * @return point or null
+     */
+    private static Object readSubSector(Box hint, Point2d point) {
+        while (true) {
+            Box box = findLowestPredecessor(hint, point);
+            Object subSector = box.children.get(box.quadrant(point));
+            if (!box.dead && !containsPoint(subSector, point)) {
+                return subSector;
+            }
+            hint = box;
+        }
+    }
+
+    private boolean addToLayer(Box hint, Point2d point, Box[] layers, int layer) {
+        while (true) {
+            Box box = findLowestPredecessor(hint, point);
+            synchronized (box) {
+                int quadrant = box.quadrant(point);
+                Object subSector = box.children.get(quadrant);
+                if (box.dead || containsPoint(subSector, point)) {
+                    hint = box;
+                    continue;
+                }
+                if (subSector == null) {
+                    box.children.set(quadrant, point);
+                    return true;
+                }
+                if (subSector instanceof Point2d && BoxSector.checkEquals((Point2d) subSector, point, precision)) {
+                    return false;
+                }
+                Box newBox = newBox(subSector, point);
+                newBox.parent = box;
+                if (layer > 0) {
+                    Box lower = box.link != null ? box.link : layers[layer - 1];
+                    newBox.link = findUnderlying(lower, newBox);
+                }
+                if (subSector instanceof Box) {
+                    ((Box) subSector).parent = newBox;
+                }
+                box.children.set(quadrant, newBox);
+                return true;
+            }
+        }
+    }
+
+    private boolean removeFromLayer(Box hint, Point2d point) {
+        while (true) {
+            Box box = findLowestPredecessor(hint, point);
+            Box parent;
+            synchronized (box) {
+                int quadrant = box.quadrant(point);
+                Object subSector = box.children.get(quadrant);
+                if (box.dead || containsPoint(subSector, point)) {
+                    hint = box;
+                    continue;
+                }
+                if (!(subSector instanceof Point2d) || !BoxSector.checkEquals((Point2d) subSector, point, precision)) {
+                    return false;
+                }
+                parent = box.parent;
+                if (parent == null || box.countNonNull() > 2) {
+                    box.children.set(quadrant, null);
+                    return true;
+                }
+            }
+            //Box is to be replaced with it's remaining sub sector, parent should be locked first
+            synchronized (parent) {
+                synchronized (box) {
+                    int parentQuadrant = parent.quadrant(box.x, box.y);
+                    if (parent.dead || box.dead || box.parent != parent || parent.children.get(parentQuadrant) != box) {
+                        hint = box;
+                        continue;
+                    }
+                    int quadrant = box.quadrant(point);
+                    Object subSector = box.children.get(quadrant);
+                    if (containsPoint(subSector, point)) {
+                        hint = box;
+                        continue;
+                    }
+                    if (!(subSector instanceof Point2d) || !BoxSector.checkEquals((Point2d) subSector, point, precision)) {
+                        return false;
+                    }
+                    box.children.set(quadrant, null);
+                    if (box.countNonNull() < 2) {
+                        Object remaining = box.getNonNull();
+                        if (remaining instanceof Box) {
+                            ((Box) remaining).parent = parent;
+                        }
+                        parent.children.set(parentQuadrant, remaining);
+                        box.dead = true;
+                    }
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds box of lower layer with the same corner and depth as box,
+     * or the lowest box containing it, if lower layer is being modified concurrently
+     */
+    private static Box findUnderlying(Box lower, Box box) {
+        while (lower.dead) {
+            lower = lower.parent;
+        }
+        while (lower.depth < box.depth) {
+            Object subSector = lower.children.get(lower.quadrant(box.x, box.y));
+            if (!(subSector instanceof Box) || ((Box) subSector).depth > box.depth
+                    || ((Box) subSector).quadrant(box.x, box.y) < 0) {
+                break;
+            }
+            lower = (Box) subSector;
+        }
+        return lower;
+    }
+
+    private Box newBox(Object a, Point2d b) {
+        double ax = a instanceof Box ? ((Box) a).x : ((Point2d) a).getX();
+        double ay = a instanceof Box ? ((Box) a).y : ((Point2d) a).getY();
+        double[] bounds = new double[3];
+        int depth = BoxSector.findMinEnclosing(bounds, ax, ay, b.getX(), b.getY());
+        Box box = new Box(bounds[0], bounds[1], bounds[2], depth);
+        box.children.set(box.quadrant(ax, ay), a);
+        box.children.set(box.quadrant(b.getX(), b.getY()), b);
+        return box;
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        double x1 = topLeft.getX(), y1 = topLeft.getY(), x2 = bottomRight.getX(), y2 = bottomRight.getY();
+        Point2d zero = zeroPoint.get();
+        if (zero != null && PointSector.isWithin(zero, x1, y1, x2, y2)) {
+            consumer.accept(zero);
+        }
+        Box[] layers = this.layers;
+        if (layers.length > 0) {
+            rangeQuery(layers[0], x1, y1, x2, y2, consumer);
+        }
+        Point2d one = onePoint.get();
+        if (one != null && PointSector.isWithin(one, x1, y1, x2, y2)) {
+            consumer.accept(one);
+        }
+    }
+
+    private static void rangeQuery(Object sector, double x1, double y1, double x2, double y2, Consumer<Point2d> consumer) {
+        if (sector instanceof Box) {
+            Box box = (Box) sector;
+            if (box.x > x2 || box.y > y2 || box.x + box.len <= x1 || box.y + box.len <= y1) {
+                return;
+            }
+            for (int i = 0; i < 4; ++i) {
+                rangeQuery(box.children.get(i), x1, y1, x2, y2, consumer);
+            }
+        } else if (sector != null && sector != ZERO_POINT && sector != ONE_POINT
+                && PointSector.isWithin((Point2d) sector, x1, y1, x2, y2)) {
+            consumer.accept((Point2d) sector);
+        }
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        int[] counter = new int[1];
+        rangeQuery(topLeft, bottomRight, p -> counter[0]++);
+        return counter[0];
+    }
+
+    private static final class Box {
+        private final double x, y, len;
+        private final int depth;
+        /**
+         * Sub sectors (either {@link Box} or {@link Point2d}) in order NW, NE, SW, SE
+         */
+        private final AtomicReferenceArray<Object> children = new AtomicReferenceArray<>(4);
+        private volatile Box parent;
+        private volatile Box link;
+        private volatile boolean dead;
+
+        Box(double x, double y, double len, int depth) {
+            this.x = x;
+            this.y = y;
+            this.len = len;
+            this.depth = depth;
+        }
+
+        int quadrant(Point2d point) {
+            return quadrant(point.getX(), point.getY());
+        }
+
+        int quadrant(double px, double py) {
+            return quadrant(x, y, len, px, py);
+        }
+
+        static int quadrant(double bx, double by, double len, double x, double y) {
+            if (bx <= x && x < bx + len && by <= y && y < by + len) {
+                return (x < bx + len / 2 ? 0 : 1) | (y < by + len / 2 ? 0 : 2);
+            }
+            return -1;
+        }
+
+        int countNonNull() {
+            int counter = 0;
+            for (int i = 0; i < 4; ++i) {
+                if (children.get(i) != null) counter++;
+            }
+            return counter;
+        }
+
+        Object getNonNull() {
+            for (int i = 0; i < 4; ++i) {
+                Object subSector = children.get(i);
+                if (subSector != null) return subSector;
+            }
+            throw new IllegalStateException("Box contains 0 entries: should have been at least 1");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Reports every pair of points (a, b), a from the first tree and b from the second one, with dist(a, b) &lt;= r.
+ * Trees are descended together: pair of sectors is dropped, if the minimal distance between them is greater than r,
+ * all pairs of points of two sectors are reported at once, if the maximal distance between them is not greater than r,
+ * otherwise the larger sector is split into it's sub sectors
+ */
+class DistanceJoin {
+    private final double rSq;
+    private final BiConsumer<Point2d, Point2d> consumer;
+
+    DistanceJoin(double r, BiConsumer<Point2d, Point2d> consumer) {
+        if (r < 0) {
+            throw new IllegalArgumentException(String.format("Negative distance passed: %s", r));
+        }
+        this.rSq = r * r;
+        this.consumer = consumer;
+    }
+
+    void join(Sector a, Sector b) {
+        if (a == null || b == null) {
+            return;
+        }
+        double ax = a.getTopLeft().getX(), ay = a.getTopLeft().getY(), aLen = getLen(a);
+        double bx = b.getTopLeft().getX(), by = b.getTopLeft().getY(), bLen = getLen(b);
+        double minDx = gap(ax, aLen, bx, bLen), minDy = gap(ay, aLen, by, bLen);
+        if (minDx * minDx + minDy * minDy > rSq) {
+            return;
+        }
+        double maxDx = span(ax, aLen, bx, bLen), maxDy = span(ay, aLen, by, bLen);
+        if (maxDx * maxDx + maxDy * maxDy <= rSq) {
+            a.forEachPoint(p -> b.forEachPoint(q -> consumer.accept(p, q)));
+            return;
+        }
+        //Two points are at distance, equal to both minimal and maximal one, so at least one of sectors is a box
+        if (aLen >= bLen) {
+            BoxSector boxSector = (BoxSector) a;
+            for (SubSectorType type : SubSectorType.values()) {
+                join(boxSector.getSubSector(type), b);
+            }
+        } else {
+            BoxSector boxSector = (BoxSector) b;
+            for (SubSectorType type : SubSectorType.values()) {
+                join(a, boxSector.getSubSector(type));
+            }
+        }
+    }
+
+    private static double getLen(Sector sector) {
+        return sector instanceof BoxSector ? ((BoxSector) sector).getLen() : 0;
+    }
+
+    /**
+     * Distance between segments [a; a + aLen] and [b; b + bLen]
+     */
+    private static double gap(double a, double aLen, double b, double bLen) {
+        return Math.max(0, Math.max(a - b - bLen, b - a - aLen));
+    }
+
+    /**
+     * Max distance between points of segments [a; a + aLen] and [b; b + bLen]
+     */
+    private static double span(double a, double aLen, double b, double bLen) {
+        return Math.max(a + aLen - b, b + bLen - a);
+    }
+}
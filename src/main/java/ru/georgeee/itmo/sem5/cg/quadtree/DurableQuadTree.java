@@ -0,0 +1,450 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Quad tree, which survives crashes: every successful add and remove is appended to write-ahead log in directory,
+ * and from time to time checkpoint (all points of tree) is written, so on startup tree is built from checkpoint
+ * and only log tail is replayed.
+ * <p>
+ * Operations are applied to the tree in caller's thread, while log is written by background thread,
+ * which takes all records, accumulated since it's previous write, in one batch (group commit).
+ * Whether batch is forced to disk is decided by {@link FsyncPolicy}, {@link #sync()} waits until all
+ * previous operations are on disk regardless of policy.
+ * <p>
+ * Log is split into generations: checkpoint covers all generations up to some one, and new generation is started with it.
+ * Checkpoint of {@link CompressedQuadTree} is taken from it's snapshot, other trees are copied while operations wait.
+ * Operations are synchronized on the tree
+ */
+public class DurableQuadTree implements QuadTree, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(DurableQuadTree.class);
+    private static final int CHECKPOINT_MAGIC = 0x43515443;
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String CHECKPOINT_TEMP_FILE = "checkpoint.tmp";
+    private static final String LOG_PREFIX = "log-";
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final int RECORD_BYTES = 1 + 8 + 8;
+    private static final int INITIAL_BUFFER_BYTES = 1 << 16;
+    private static final long DEFAULT_FSYNC_INTERVAL = 1000;
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1 << 20;
+
+    public enum FsyncPolicy {
+        /**
+         * Log is forced after every batch
+         */
+        BATCH,
+        /**
+         * Log is forced at most once per fsync interval
+         */
+        PERIODIC,
+        /**
+         * Log is forced only by {@link #sync()}, checkpoints and {@link #close()}
+         */
+        NEVER
+    }
+
+    @Getter
+    private final Path directory;
+    private final QuadTree tree;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncInterval;
+    private final int checkpointInterval;
+    private final Thread writer;
+
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    /**
+     * Number of operations logged, number of them written to log and forced to disk
+     */
+    private long sequence;
+    private long writtenSequence;
+    private long durableSequence;
+    private int operationsSinceCheckpoint;
+    private boolean checkpointRequested;
+    private boolean forceRequested;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Accessed only by writer thread after construction
+     */
+    private long generation;
+    private FileChannel logChannel;
+
+    public DurableQuadTree(Path directory, Function<Collection<Point2d>, ? extends QuadTree> factory) throws IOException {
+        this(directory, factory, FsyncPolicy.BATCH, DEFAULT_FSYNC_INTERVAL, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Recovers tree from directory (or creates empty one, if there is nothing to recover)
+     *
+     * @param factory            builds tree from points of checkpoint
+     * @param fsyncInterval      min interval between forces of log in milliseconds for {@link FsyncPolicy#PERIODIC}
+     * @param checkpointInterval number of logged operations, after which checkpoint is taken
+     */
+    public DurableQuadTree(Path directory, Function<Collection<Point2d>, ? extends QuadTree> factory,
+                           FsyncPolicy fsyncPolicy, long fsyncInterval, int checkpointInterval) throws IOException {
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal checkpoint interval %d", checkpointInterval));
+        }
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncInterval = fsyncInterval;
+        this.checkpointInterval = checkpointInterval;
+        Files.createDirectories(directory);
+        long covered = -1;
+        List<Point2d> points = new ArrayList<>();
+        Path checkpoint = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpoint)) {
+            covered = readCheckpoint(checkpoint, points);
+        }
+        tree = factory.apply(points);
+        generation = covered;
+        for (Map.Entry<Long, Path> entry : listLogs().entrySet()) {
+            if (entry.getKey() <= covered) {
+                Files.delete(entry.getValue());
+            } else {
+                operationsSinceCheckpoint += replay(entry.getValue());
+                generation = entry.getKey();
+            }
+        }
+        log.info("Recovered {} points of checkpoint and {} operations of log from {}", points.size(), operationsSinceCheckpoint, directory);
+        checkpointRequested = operationsSinceCheckpoint >= checkpointInterval;
+        //Tail of the last log may be torn, so new generation is started
+        openLog(++generation);
+        writer = new Thread(this::runWriter, "quadtree-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private TreeMap<Long, Path> listLogs() throws IOException {
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, LOG_PREFIX + "*")) {
+            for (Path path : stream) {
+                logs.put(Long.parseLong(path.getFileName().toString().substring(LOG_PREFIX.length())), path);
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * Creates log of generation, it's entry is forced with directory, so later forces of log make records durable
+     */
+    private void openLog(long generation) throws IOException {
+        logChannel = FileChannel.open(directory.resolve(LOG_PREFIX + generation),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        forceDirectory();
+    }
+
+    /**
+     * Forces entries of directory (created, moved and deleted files) to disk
+     */
+    void forceDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static long readCheckpoint(Path path, List<Point2d> points) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            int magic = in.readInt();
+            if (magic != CHECKPOINT_MAGIC) {
+                throw new IOException(String.format("File %s is not a checkpoint: wrong magic %x", path, magic));
+            }
+            long covered = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                points.add(new Point2d(in.readDouble(), in.readDouble()));
+            }
+            return covered;
+        }
+    }
+
+    /**
+     * Applies operations of log to tree, stopping at torn record
+     *
+     * @return number of operations applied
+     */
+    private int replay(Path path) throws IOException {
+        int counter = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                byte type = in.readByte();
+                Point2d point = new Point2d(in.readDouble(), in.readDouble());
+                if (type == ADD) {
+                    tree.add(point);
+                } else if (type == REMOVE) {
+                    tree.remove(point);
+                } else {
+                    log.warn("Unknown record type {} in log {}, skipping the rest", type, path);
+                    break;
+                }
+                counter++;
+            }
+        } catch (EOFException ignored) {
+        }
+        return counter;
+    }
+
+    private void append(byte type, Point2d point) {
+        if (pending.remaining() < RECORD_BYTES) {
+            ByteBuffer grown = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        if (pending.position() == 0) {
+            notifyAll();
+        }
+        pending.put(type).putDouble(point.getX()).putDouble(point.getY());
+        sequence++;
+        if (++operationsSinceCheckpoint >= checkpointInterval) {
+            operationsSinceCheckpoint = 0;
+            checkpointRequested = true;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Tree is closed");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Log writer failed", failure);
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(Point2d point) {
+        return tree.contains(point);
+    }
+
+    @Override
+    public synchronized boolean add(Point2d point) {
+        checkOpen();
+        if (!tree.add(point)) {
+            return false;
+        }
+        append(ADD, point);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(Point2d point) {
+        checkOpen();
+        if (!tree.remove(point)) {
+            return false;
+        }
+        append(REMOVE, point);
+        return true;
+    }
+
+    @Override
+    public synchronized void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        tree.rangeQuery(topLeft, bottomRight, consumer);
+    }
+
+    @Override
+    public synchronized int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        return tree.rangeCount(topLeft, bottomRight);
+    }
+
+    /**
+     * Waits until all operations, done before the call, are forced to disk
+     */
+    public synchronized void sync() throws IOException, InterruptedException {
+        long target = sequence;
+        forceRequested = true;
+        notifyAll();
+        while (durableSequence < target && failure == null) {
+            wait();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Requests checkpoint to be taken by writer thread
+     */
+    public synchronized void checkpoint() {
+        checkOpen();
+        checkpointRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * Writes and forces the rest of log and stops writer thread
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing log", e);
+        }
+        logChannel.close();
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void runWriter() {
+        long lastForce = System.currentTimeMillis();
+        try {
+            while (true) {
+                ByteBuffer batch;
+                long batchSequence;
+                boolean force, stop;
+                Supplier<Collection<Point2d>> snapshot = null;
+                synchronized (this) {
+                    while (pending.position() == 0 && !closed && !checkpointRequested && !forceRequested) {
+                        if (fsyncPolicy == FsyncPolicy.PERIODIC && durableSequence < writtenSequence) {
+                            long delay = lastForce + fsyncInterval - System.currentTimeMillis();
+                            if (delay <= 0) {
+                                break;
+                            }
+                            wait(delay);
+                        } else {
+                            wait();
+                        }
+                    }
+                    batch = pending;
+                    pending = spare;
+                    spare = batch;
+                    batchSequence = sequence;
+                    if (checkpointRequested) {
+                        checkpointRequested = false;
+                        snapshot = takeSnapshot();
+                    }
+                    stop = closed;
+                    force = forceRequested || stop || snapshot != null || fsyncPolicy == FsyncPolicy.BATCH
+                            || fsyncPolicy == FsyncPolicy.PERIODIC && System.currentTimeMillis() - lastForce >= fsyncInterval;
+                    forceRequested = false;
+                }
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    logChannel.write(batch);
+                }
+                batch.clear();
+                if (force) {
+                    logChannel.force(false);
+                    lastForce = System.currentTimeMillis();
+                }
+                if (snapshot != null) {
+                    writeCheckpoint(snapshot.get());
+                }
+                synchronized (this) {
+                    writtenSequence = batchSequence;
+                    if (force) {
+                        durableSequence = batchSequence;
+                    }
+                    notifyAll();
+                }
+                if (stop) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to write log to {}", directory, e);
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            log.error("Log writer interrupted", e);
+            synchronized (this) {
+                failure = new IOException("Log writer interrupted", e);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Takes state of tree, containing all operations logged so far, should be called under lock
+     */
+    private Supplier<Collection<Point2d>> takeSnapshot() {
+        if (tree instanceof CompressedQuadTree) {
+            CompressedQuadTreeSnapshot snapshot = ((CompressedQuadTree) tree).snapshot();
+            return () -> collectPoints(snapshot);
+        }
+        List<Point2d> points = collectPoints(tree);
+        return () -> points;
+    }
+
+    private static List<Point2d> collectPoints(QuadTreeView quadTree) {
+        List<Point2d> points = new ArrayList<>();
+        quadTree.rangeQuery(new Point2d(0, 0), new Point2d(1, 1), points::add);
+        return points;
+    }
+
+    /**
+     * Writes checkpoint, covering current generation of log, and starts new generation.
+     * Checkpoint is written to temporary file and then moved over the previous one, so either of them is always complete.
+     * Logs, covered by checkpoint, are deleted only after the move is forced with directory:
+     * otherwise after crash previous checkpoint might be found without logs it needs
+     */
+    private void writeCheckpoint(Collection<Point2d> points) throws IOException {
+        long covered = generation;
+        logChannel.close();
+        openLog(++generation);
+        Path temp = directory.resolve(CHECKPOINT_TEMP_FILE);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeLong(covered);
+            out.writeInt(points.size());
+            for (Point2d point : points) {
+                out.writeDouble(point.getX());
+                out.writeDouble(point.getY());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+        for (Path path : listLogs().headMap(covered, true).values()) {
+            Files.delete(path);
+        }
+        log.info("Checkpoint of {} points written to {}", points.size(), directory);
+    }
+}
@@ -0,0 +1,55 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import lombok.Getter;
+
+/**
+ * Maps world coordinates to cells of integer grid for {@link GridQuadTree} and back:
+ * world point (x, y) gets to cell (floor((x - minX) / cellSize), floor((y - minY) / cellSize))
+ */
+@Getter
+public class GridMapping {
+    /**
+     * Grid coordinates should fit into [0; 2^63)
+     */
+    private static final double GRID_LIMIT = 0x1p63;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+
+    public GridMapping(double minX, double minY, double cellSize) {
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException(String.format("Illegal cell size %s", cellSize));
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+    }
+
+    public long toGridX(double x) {
+        return toGrid(x, minX);
+    }
+
+    public long toGridY(double y) {
+        return toGrid(y, minY);
+    }
+
+    /**
+     * @return world coordinate of cell's corner
+     */
+    public double toWorldX(long x) {
+        return minX + x * cellSize;
+    }
+
+    public double toWorldY(long y) {
+        return minY + y * cellSize;
+    }
+
+    private long toGrid(double c, double min) {
+        double cell = Math.floor((c - min) / cellSize);
+        if (!(cell >= 0 && cell < GRID_LIMIT)) {
+            throw new IllegalArgumentException(String.format("Coordinate %s is out of grid, starting at %s with cell size %s", c, min, cellSize));
+        }
+        return (long) cell;
+    }
+}
@@ -0,0 +1,281 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import lombok.Getter;
+
+/**
+ * Compressed quad tree of points with integer coordinates in [0; 2^63) (e.g. data, quantized by {@link GridMapping}).
+ * Boxes are cells of the grid with side 2^level and corner, which coordinates are multiples of side,
+ * so all cell computations are bit operations: box of two points has level of the highest differing bit
+ * of their coordinates, and quadrant of point within box is given by bits of coordinates at level - 1.
+ * Unlike {@link CompressedQuadTree}, points are equal only if coordinates are equal
+ */
+public class GridQuadTree {
+    private static final int LEVELS = Long.SIZE - 1;
+
+    private Object root;
+    @Getter
+    private int size;
+
+    @FunctionalInterface
+    public interface PointConsumer {
+        void accept(long x, long y);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long x, long y) {
+        checkCoordinates(x, y);
+        Object node = root;
+        while (node instanceof Box) {
+            Box box = (Box) node;
+            if (!box.encloses(x, y)) {
+                return false;
+            }
+            node = box.children[box.quadrant(x, y)];
+        }
+        return node != null && ((Leaf) node).x == x && ((Leaf) node).y == y;
+    }
+
+    /**
+     * @return false if point already exists
+     */
+    public boolean add(long x, long y) {
+        checkCoordinates(x, y);
+        Box parent = null;
+        int index = 0;
+        Object node = root;
+        while (node instanceof Box && ((Box) node).encloses(x, y)) {
+            parent = (Box) node;
+            index = parent.quadrant(x, y);
+            node = parent.children[index];
+        }
+        Leaf leaf = new Leaf(x, y);
+        if (node == null) {
+            if (parent == null) {
+                root = leaf;
+            } else {
+                parent.children[index] = leaf;
+                parent.updateSizes(1);
+            }
+            size++;
+            return true;
+        }
+        long nodeX, nodeY;
+        if (node instanceof Leaf) {
+            nodeX = ((Leaf) node).x;
+            nodeY = ((Leaf) node).y;
+            if (nodeX == x && nodeY == y) {
+                return false;
+            }
+        } else {
+            nodeX = ((Box) node).x;
+            nodeY = ((Box) node).y;
+        }
+        Box box = new Box(nodeX, nodeY, level(nodeX ^ x, nodeY ^ y));
+        box.attach(node);
+        box.attach(leaf);
+        box.parent = parent;
+        if (parent == null) {
+            root = box;
+        } else {
+            parent.children[index] = box;
+            parent.updateSizes(1);
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * @return false if point is absent
+     */
+    public boolean remove(long x, long y) {
+        checkCoordinates(x, y);
+        Box parent = null;
+        int index = 0;
+        Object node = root;
+        while (node instanceof Box) {
+            if (!((Box) node).encloses(x, y)) {
+                return false;
+            }
+            parent = (Box) node;
+            index = parent.quadrant(x, y);
+            node = parent.children[index];
+        }
+        if (node == null || ((Leaf) node).x != x || ((Leaf) node).y != y) {
+            return false;
+        }
+        size--;
+        if (parent == null) {
+            root = null;
+            return true;
+        }
+        parent.updateSizes(-1);
+        Object remaining = QuadBoxes.removeChild(parent.children, index);
+        if (remaining != null) {
+            //Box with one child is replaced with it
+            Box grandParent = parent.parent;
+            if (remaining instanceof Box) {
+                ((Box) remaining).parent = grandParent;
+            }
+            if (grandParent == null) {
+                root = remaining;
+            } else {
+                grandParent.children[grandParent.quadrant(parent.x, parent.y)] = remaining;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes to consumer every point (x, y) of tree, such that x1 &lt;= x &lt;= x2 and y1 &lt;= y &lt;= y2
+     */
+    public void rangeQuery(long x1, long y1, long x2, long y2, PointConsumer consumer) {
+        if (root != null && x1 <= x2 && y1 <= y2) {
+            rangeQuery(root, x1, y1, x2, y2, consumer);
+        }
+    }
+
+    private static void rangeQuery(Object node, long x1, long y1, long x2, long y2, PointConsumer consumer) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            if (x1 <= leaf.x && leaf.x <= x2 && y1 <= leaf.y && leaf.y <= y2) {
+                consumer.accept(leaf.x, leaf.y);
+            }
+            return;
+        }
+        Box box = (Box) node;
+        if (box.intersects(x1, y1, x2, y2)) {
+            for (Object child : box.children) {
+                if (child != null) {
+                    rangeQuery(child, x1, y1, x2, y2, consumer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts points, that would be reported by {@link #rangeQuery(long, long, long, long, PointConsumer)}.
+     * Boxes, lying within rectangle, are counted by their sizes
+     */
+    public int rangeCount(long x1, long y1, long x2, long y2) {
+        if (root == null || x1 > x2 || y1 > y2) {
+            return 0;
+        }
+        return rangeCount(root, x1, y1, x2, y2);
+    }
+
+    private static int rangeCount(Object node, long x1, long y1, long x2, long y2) {
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            return x1 <= leaf.x && leaf.x <= x2 && y1 <= leaf.y && leaf.y <= y2 ? 1 : 0;
+        }
+        Box box = (Box) node;
+        if (!box.intersects(x1, y1, x2, y2)) {
+            return 0;
+        }
+        if (box.isWithin(x1, y1, x2, y2)) {
+            return box.size;
+        }
+        int counter = 0;
+        for (Object child : box.children) {
+            if (child != null) {
+                counter += rangeCount(child, x1, y1, x2, y2);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Level of the lowest cell, containing two points, by xor of their coordinates
+     */
+    private static int level(long dx, long dy) {
+        return Long.SIZE - Long.numberOfLeadingZeros(dx | dy);
+    }
+
+    private static void checkCoordinates(long x, long y) {
+        if (x < 0 || y < 0) {
+            throw new IllegalArgumentException(String.format("Passed x, y outside [0; 2^%d): %d %d", LEVELS, x, y));
+        }
+    }
+
+    private static class Leaf {
+        private final long x, y;
+
+        Leaf(long x, long y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private static class Box {
+        /**
+         * Corner of cell, i.e. coordinates with lower level bits cleared
+         */
+        private final long x, y;
+        /**
+         * Cell has side 2^level
+         */
+        private final int level;
+        /**
+         * Sub sectors (Box or Leaf), indexed by quadrant
+         */
+        private final Object[] children = new Object[4];
+        private Box parent;
+        private int size;
+
+        Box(long x, long y, int level) {
+            long mask = -1L << level;
+            this.x = x & mask;
+            this.y = y & mask;
+            this.level = level;
+        }
+
+        boolean encloses(long px, long py) {
+            return ((px ^ x) | (py ^ y)) >>> level == 0;
+        }
+
+        /**
+         * Quadrant index is made of bits of y and x at level - 1, same as in Z-order
+         */
+        int quadrant(long px, long py) {
+            int shift = level - 1;
+            return (int) ((py >>> shift) & 1) << 1 | (int) ((px >>> shift) & 1);
+        }
+
+        long maxX() {
+            return x | ~(-1L << level);
+        }
+
+        long maxY() {
+            return y | ~(-1L << level);
+        }
+
+        boolean intersects(long x1, long y1, long x2, long y2) {
+            return x1 <= maxX() && x <= x2 && y1 <= maxY() && y <= y2;
+        }
+
+        boolean isWithin(long x1, long y1, long x2, long y2) {
+            return x1 <= x && maxX() <= x2 && y1 <= y && maxY() <= y2;
+        }
+
+        void attach(Object node) {
+            if (node instanceof Leaf) {
+                children[quadrant(((Leaf) node).x, ((Leaf) node).y)] = node;
+                size++;
+            } else {
+                Box box = (Box) node;
+                children[quadrant(box.x, box.y)] = box;
+                box.parent = this;
+                size += box.size;
+            }
+        }
+
+        void updateSizes(int delta) {
+            for (Box box = this; box != null; box = box.parent) {
+                box.size += delta;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import lombok.Getter;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Wrapper of quad tree, collecting it's metrics: latencies of operations, done through wrapper,
+ * structure of tree and (for {@link SkipQuadTree}) predecessor searches and coin flips of all operations.
+ * Trees, which aren't wrapped, don't collect anything, and when metrics are disabled,
+ * wrapper only checks volatile flag per operation
+ */
+public class InstrumentedQuadTree implements QuadTree {
+    /**
+     * Start time of operation, which isn't measured
+     */
+    private static final long NOT_MEASURED = Long.MIN_VALUE;
+
+    private final QuadTree quadTree;
+    @Getter
+    private final QuadTreeMetrics metrics;
+
+    public InstrumentedQuadTree(QuadTree quadTree) {
+        this.quadTree = quadTree;
+        this.metrics = QuadTreeMetrics.of(quadTree);
+    }
+
+    private long start() {
+        return metrics.isEnabled() ? System.nanoTime() : NOT_MEASURED;
+    }
+
+    private void finish(QuadTreeMetrics.Operation operation, long start) {
+        if (start != NOT_MEASURED) {
+            metrics.recordLatency(operation, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean contains(Point2d point) {
+        long start = start();
+        boolean result = quadTree.contains(point);
+        finish(QuadTreeMetrics.Operation.CONTAINS, start);
+        return result;
+    }
+
+    @Override
+    public boolean add(Point2d point) {
+        long start = start();
+        boolean result = quadTree.add(point);
+        finish(QuadTreeMetrics.Operation.ADD, start);
+        return result;
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        long start = start();
+        boolean result = quadTree.remove(point);
+        finish(QuadTreeMetrics.Operation.REMOVE, start);
+        return result;
+    }
+
+    @Override
+    public int addAll(Collection<Point2d> points) {
+        long start = start();
+        int result = quadTree.addAll(points);
+        finish(QuadTreeMetrics.Operation.ADD_ALL, start);
+        return result;
+    }
+
+    @Override
+    public int removeAll(Collection<Point2d> points) {
+        long start = start();
+        int result = quadTree.removeAll(points);
+        finish(QuadTreeMetrics.Operation.REMOVE_ALL, start);
+        return result;
+    }
+
+    @Override
+    public boolean containsAll(Collection<Point2d> points) {
+        long start = start();
+        boolean result = quadTree.containsAll(points);
+        finish(QuadTreeMetrics.Operation.CONTAINS_ALL, start);
+        return result;
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        long start = start();
+        quadTree.rangeQuery(topLeft, bottomRight, consumer);
+        finish(QuadTreeMetrics.Operation.RANGE_QUERY, start);
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        long start = start();
+        int result = quadTree.rangeCount(topLeft, bottomRight);
+        finish(QuadTreeMetrics.Operation.RANGE_COUNT, start);
+        return result;
+    }
+
+    /**
+     * Nearest queries aren't among measured operations, they're only delegated
+     */
+    @Override
+    public List<Point2d> nearest(Point2d point, int k) {
+        return quadTree.nearest(point, k);
+    }
+
+    /**
+     * Traversal is lazy, so it isn't measured
+     */
+    @Override
+    public Spliterator<Point2d> rangeSpliterator(Point2d topLeft, Point2d bottomRight) {
+        return quadTree.rangeSpliterator(topLeft, bottomRight);
+    }
+}
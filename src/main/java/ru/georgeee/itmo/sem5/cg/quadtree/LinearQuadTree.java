@@ -0,0 +1,429 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.Collection;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Linear quad tree: points are kept as Morton keys (see {@link MortonOrder#key(double, double)}) in sorted array
+ * together with their coordinates, so every box of quad tree is a contiguous range of array.
+ * Points with equal keys are ordered by {@link MortonOrder#COMPARATOR}, so array is in Z-order of points.
+ * New points go to small sorted buffer, which is merged into main array when it overflows.
+ * Removed points of main array are marked with NaN coordinates and dropped on merge
+ */
+public class LinearQuadTree implements QuadTree {
+    private static final int MIN_BUFFER_CAPACITY = 64;
+    /**
+     * Number of levels (including integer one), kept in key
+     */
+    private static final int KEY_LEVELS = 32;
+
+    private final double precision;
+    /**
+     * Equal points always lie within the same box with this number of levels fixed,
+     * so only it's key range should be looked through
+     */
+    private final int equalityLevels;
+
+    private long[] keys = new long[0];
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private int removedCount;
+
+    private long[] bufferKeys = new long[MIN_BUFFER_CAPACITY];
+    private double[] bufferXs = new double[MIN_BUFFER_CAPACITY];
+    private double[] bufferYs = new double[MIN_BUFFER_CAPACITY];
+    private int bufferSize;
+
+    public LinearQuadTree() {
+        this(0);
+    }
+
+    public LinearQuadTree(double precision) {
+        this.precision = precision;
+        //Box of depth -exp(precision) has side not less than precision
+        this.equalityLevels = precision == 0 ? KEY_LEVELS : Math.min(KEY_LEVELS, 1 - Math.getExponent(precision));
+    }
+
+    public LinearQuadTree(Collection<Point2d> points, double precision) {
+        this(precision);
+        Point2d[] array = points.toArray(new Point2d[points.size()]);
+        int[] order = MortonOrder.sortedDistinct(array, precision);
+        keys = new long[order.length];
+        xs = new double[order.length];
+        ys = new double[order.length];
+        for (int i = 0; i < order.length; ++i) {
+            Point2d point = array[order[i]];
+            keys[i] = MortonOrder.key(point.getX(), point.getY());
+            xs[i] = point.getX();
+            ys[i] = point.getY();
+        }
+    }
+
+    public int size() {
+        return keys.length - removedCount + bufferSize;
+    }
+
+    @Override
+    public boolean contains(Point2d point) {
+        long key = MortonOrder.key(point.getX(), point.getY());
+        return find(keys, xs, ys, keys.length, key, point) >= 0
+                || find(bufferKeys, bufferXs, bufferYs, bufferSize, key, point) >= 0;
+    }
+
+    @Override
+    public boolean add(Point2d point) {
+        if (contains(point)) {
+            return false;
+        }
+        if (bufferSize == bufferKeys.length) {
+            merge();
+        }
+        double x = point.getX(), y = point.getY();
+        long key = MortonOrder.key(x, y);
+        int pos = lowerBound(bufferKeys, 0, bufferSize, key);
+        while (pos < bufferSize && bufferKeys[pos] == key && MortonOrder.compare(bufferXs[pos], bufferYs[pos], x, y) < 0) {
+            ++pos;
+        }
+        System.arraycopy(bufferKeys, pos, bufferKeys, pos + 1, bufferSize - pos);
+        System.arraycopy(bufferXs, pos, bufferXs, pos + 1, bufferSize - pos);
+        System.arraycopy(bufferYs, pos, bufferYs, pos + 1, bufferSize - pos);
+        bufferKeys[pos] = key;
+        bufferXs[pos] = x;
+        bufferYs[pos] = y;
+        bufferSize++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        long key = MortonOrder.key(point.getX(), point.getY());
+        int pos = find(keys, xs, ys, keys.length, key, point);
+        if (pos >= 0) {
+            xs[pos] = ys[pos] = Double.NaN;
+            if (++removedCount > keys.length / 2) {
+                merge();
+            }
+            return true;
+        }
+        pos = find(bufferKeys, bufferXs, bufferYs, bufferSize, key, point);
+        if (pos >= 0) {
+            System.arraycopy(bufferKeys, pos + 1, bufferKeys, pos, bufferSize - pos - 1);
+            System.arraycopy(bufferXs, pos + 1, bufferXs, pos, bufferSize - pos - 1);
+            System.arraycopy(bufferYs, pos + 1, bufferYs, pos, bufferSize - pos - 1);
+            bufferSize--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds position of point, equal to given one, within sorted arrays
+     *
+     * @return position or -1 if no such point exists
+     */
+    private int find(long[] keys, double[] xs, double[] ys, int size, long key, Point2d point) {
+        long mask = keyMask(equalityLevels);
+        int to = upperBound(keys, 0, size, key | mask);
+        for (int i = lowerBound(keys, 0, size, key & ~mask); i < to; ++i) {
+            if (!Double.isNaN(xs[i]) && checkEquals(xs[i], ys[i], point)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean checkEquals(double x, double y, Point2d point) {
+        return BoxSector.checkEquals(x, y, point.getX(), point.getY(), precision);
+    }
+
+    /**
+     * Compares points in Z-order: by keys, then (for points, too close to differ in key) by {@link MortonOrder#COMPARATOR}
+     */
+    private static int compare(long key, double x, double y, long otherKey, double otherX, double otherY) {
+        int result = Long.compareUnsigned(key, otherKey);
+        return result != 0 ? result : MortonOrder.compare(x, y, otherX, otherY);
+    }
+
+    /**
+     * Merges buffer into main array, dropping removed points
+     */
+    private void merge() {
+        int size = keys.length - removedCount + bufferSize;
+        long[] newKeys = new long[size];
+        double[] newXs = new double[size];
+        double[] newYs = new double[size];
+        int i = 0, j = 0, k = 0;
+        while (i < keys.length || j < bufferSize) {
+            if (i < keys.length && Double.isNaN(xs[i])) {
+                ++i;
+            } else if (j == bufferSize || (i < keys.length && compare(keys[i], xs[i], ys[i], bufferKeys[j], bufferXs[j], bufferYs[j]) <= 0)) {
+                newKeys[k] = keys[i];
+                newXs[k] = xs[i];
+                newYs[k++] = ys[i++];
+            } else {
+                newKeys[k] = bufferKeys[j];
+                newXs[k] = bufferXs[j];
+                newYs[k++] = bufferYs[j++];
+            }
+        }
+        keys = newKeys;
+        xs = newXs;
+        ys = newYs;
+        removedCount = 0;
+        bufferSize = 0;
+        int capacity = Math.max(MIN_BUFFER_CAPACITY, (int) Math.sqrt(size));
+        if (capacity != bufferKeys.length) {
+            bufferKeys = new long[capacity];
+            bufferXs = new double[capacity];
+            bufferYs = new double[capacity];
+        }
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        rangeQuery(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), 0, 0, 0, 0, 2, consumer);
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        return rangeCount(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), 0, 0, 0, 0, 2);
+    }
+
+    /**
+     * Main array and buffer are already in Z-order, so they are merged on the fly, without copying and sorting.
+     * Key is monotone in both coordinates, so only ranges of arrays between keys of rectangle corners are looked through
+     */
+    @Override
+    public Spliterator<Point2d> rangeSpliterator(Point2d topLeft, Point2d bottomRight) {
+        double x1 = topLeft.getX(), y1 = topLeft.getY(), x2 = bottomRight.getX(), y2 = bottomRight.getY();
+        if (x1 > x2 || y1 > y2 || x2 < 0 || y2 < 0 || x1 > 1 || y1 > 1) {
+            return Spliterators.emptySpliterator();
+        }
+        long fromKey = MortonOrder.key(Math.max(x1, 0), Math.max(y1, 0));
+        long toKey = MortonOrder.key(Math.min(x2, 1), Math.min(y2, 1));
+        boolean whole = x1 <= 0 && y1 <= 0 && x2 >= 1 && y2 >= 1;
+        return new RangeSpliterator(x1, y1, x2, y2,
+                lowerBound(keys, 0, keys.length, fromKey), upperBound(keys, 0, keys.length, toKey),
+                lowerBound(bufferKeys, 0, bufferSize, fromKey), upperBound(bufferKeys, 0, bufferSize, toKey),
+                whole ? size() : -1, whole && removedCount == 0);
+    }
+
+    /**
+     * Reports points of box [bx; bx + len) x [by; by + len), lying within rectangle [x1; x2] x [y1; y2].
+     * Box is identified by key of it's top left corner and number of levels, fixed in keys of it's points
+     */
+    private void rangeQuery(double x1, double y1, double x2, double y2,
+                            long boxKey, int levels, double bx, double by, double len, Consumer<Point2d> consumer) {
+        if (bx > x2 || by > y2 || bx + len <= x1 || by + len <= y1) {
+            return;
+        }
+        long lastKey = boxKey | keyMask(levels);
+        int from = lowerBound(keys, 0, keys.length, boxKey), to = upperBound(keys, 0, keys.length, lastKey);
+        int bufferFrom = lowerBound(bufferKeys, 0, bufferSize, boxKey), bufferTo = upperBound(bufferKeys, 0, bufferSize, lastKey);
+        if (from == to && bufferFrom == bufferTo) {
+            return;
+        }
+        boolean inside = x1 <= bx && y1 <= by && bx + len <= x2 && by + len <= y2;
+        if (inside || levels == KEY_LEVELS) {
+            report(xs, ys, from, to, x1, y1, x2, y2, consumer);
+            report(bufferXs, bufferYs, bufferFrom, bufferTo, x1, y1, x2, y2, consumer);
+            return;
+        }
+        double half = len / 2;
+        int shift = 2 * (KEY_LEVELS - levels - 1);
+        rangeQuery(x1, y1, x2, y2, boxKey, levels + 1, bx, by, half, consumer);
+        rangeQuery(x1, y1, x2, y2, boxKey | (1L << shift), levels + 1, bx + half, by, half, consumer);
+        rangeQuery(x1, y1, x2, y2, boxKey | (2L << shift), levels + 1, bx, by + half, half, consumer);
+        rangeQuery(x1, y1, x2, y2, boxKey | (3L << shift), levels + 1, bx + half, by + half, half, consumer);
+    }
+
+    private static void report(double[] xs, double[] ys, int from, int to,
+                               double x1, double y1, double x2, double y2, Consumer<Point2d> consumer) {
+        for (int i = from; i < to; ++i) {
+            double x = xs[i], y = ys[i];
+            if (x1 <= x && x <= x2 && y1 <= y && y <= y2) {
+                consumer.accept(new Point2d(x, y));
+            }
+        }
+    }
+
+    private int rangeCount(double x1, double y1, double x2, double y2, long boxKey, int levels,
+                           double bx, double by, double len) {
+        if (bx > x2 || by > y2 || bx + len <= x1 || by + len <= y1) {
+            return 0;
+        }
+        long lastKey = boxKey | keyMask(levels);
+        int from = lowerBound(keys, 0, keys.length, boxKey), to = upperBound(keys, 0, keys.length, lastKey);
+        int bufferFrom = lowerBound(bufferKeys, 0, bufferSize, boxKey), bufferTo = upperBound(bufferKeys, 0, bufferSize, lastKey);
+        if (from == to && bufferFrom == bufferTo) {
+            return 0;
+        }
+        boolean inside = x1 <= bx && y1 <= by && bx + len <= x2 && by + len <= y2;
+        if (inside && removedCount == 0) {
+            return to - from + bufferTo - bufferFrom;
+        }
+        if (inside || levels == KEY_LEVELS) {
+            return count(xs, ys, from, to, x1, y1, x2, y2) + count(bufferXs, bufferYs, bufferFrom, bufferTo, x1, y1, x2, y2);
+        }
+        double half = len / 2;
+        int shift = 2 * (KEY_LEVELS - levels - 1);
+        return rangeCount(x1, y1, x2, y2, boxKey, levels + 1, bx, by, half)
+                + rangeCount(x1, y1, x2, y2, boxKey | (1L << shift), levels + 1, bx + half, by, half)
+                + rangeCount(x1, y1, x2, y2, boxKey | (2L << shift), levels + 1, bx, by + half, half)
+                + rangeCount(x1, y1, x2, y2, boxKey | (3L << shift), levels + 1, bx + half, by + half, half);
+    }
+
+    private static int count(double[] xs, double[] ys, int from, int to, double x1, double y1, double x2, double y2) {
+        int counter = 0;
+        for (int i = from; i < to; ++i) {
+            double x = xs[i], y = ys[i];
+            if (x1 <= x && x <= x2 && y1 <= y && y <= y2) {
+                counter++;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Returns mask of key bits, not fixed within box, for which given number of levels is fixed
+     */
+    private static long keyMask(int levels) {
+        if (levels <= 0) {
+            return -1L;
+        }
+        if (levels >= KEY_LEVELS) {
+            return 0;
+        }
+        return (1L << (2 * (KEY_LEVELS - levels))) - 1;
+    }
+
+    /**
+     * Finds the first position within [from; to) with key not less than given one (keys are compared as unsigned)
+     */
+    private static int lowerBound(long[] keys, int from, int to, long key) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(keys[mid], key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Finds the first position within [from; to) with key greater than given one (keys are compared as unsigned)
+     */
+    private static int upperBound(long[] keys, int from, int to, long key) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(keys[mid], key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Spliterator over ranges of main array and buffer, merging them in Z-order and skipping removed points
+     * and points outside rectangle. Split divides the larger range at it's middle key and the other range at the same key.
+     * Tree shouldn't be modified while spliterator is in use
+     */
+    private class RangeSpliterator implements Spliterator<Point2d> {
+        private final double x1, y1, x2, y2;
+        private int from, bufferFrom;
+        private final int to, bufferTo;
+        /**
+         * Number of points to be reported, or -1 if it's unknown
+         */
+        private long remaining;
+        /**
+         * Every point of ranges is reported (rectangle covers the unit square, no points are removed),
+         * so sizes of parts are known after split
+         */
+        private final boolean subSized;
+
+        RangeSpliterator(double x1, double y1, double x2, double y2, int from, int to, int bufferFrom, int bufferTo,
+                         long remaining, boolean subSized) {
+            this.x1 = x1;
+            this.y1 = y1;
+            this.x2 = x2;
+            this.y2 = y2;
+            this.from = from;
+            this.to = to;
+            this.bufferFrom = bufferFrom;
+            this.bufferTo = bufferTo;
+            this.remaining = remaining;
+            this.subSized = subSized;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Point2d> action) {
+            while (from < to || bufferFrom < bufferTo) {
+                if (from < to && Double.isNaN(xs[from])) {
+                    ++from;
+                    continue;
+                }
+                double x, y;
+                if (bufferFrom == bufferTo || (from < to
+                        && compare(keys[from], xs[from], ys[from], bufferKeys[bufferFrom], bufferXs[bufferFrom], bufferYs[bufferFrom]) <= 0)) {
+                    x = xs[from];
+                    y = ys[from++];
+                } else {
+                    x = bufferXs[bufferFrom];
+                    y = bufferYs[bufferFrom++];
+                }
+                if (x1 <= x && x <= x2 && y1 <= y && y <= y2) {
+                    if (remaining > 0) {
+                        remaining--;
+                    }
+                    action.accept(new Point2d(x, y));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Point2d> trySplit() {
+            if (to - from + bufferTo - bufferFrom < 2) {
+                return null;
+            }
+            long pivot = to - from >= bufferTo - bufferFrom ? keys[(from + to) >>> 1] : bufferKeys[(bufferFrom + bufferTo) >>> 1];
+            int mid = lowerBound(keys, from, to, pivot), bufferMid = lowerBound(bufferKeys, bufferFrom, bufferTo, pivot);
+            if (mid == from && bufferMid == bufferFrom) {
+                //All keys before pivot are equal to it, so ranges are split after them
+                mid = upperBound(keys, from, to, pivot);
+                bufferMid = upperBound(bufferKeys, bufferFrom, bufferTo, pivot);
+                if (mid == to && bufferMid == bufferTo) {
+                    return null;
+                }
+            }
+            long prefixSize = subSized ? mid - from + bufferMid - bufferFrom : -1;
+            RangeSpliterator prefix = new RangeSpliterator(x1, y1, x2, y2, from, mid, bufferFrom, bufferMid, prefixSize, subSized);
+            from = mid;
+            bufferFrom = bufferMid;
+            remaining = subSized ? remaining - prefixSize : -1;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining >= 0 ? remaining : to - from + bufferTo - bufferFrom;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | (remaining >= 0 ? SIZED : 0) | (subSized ? SUBSIZED : 0);
+        }
+    }
+}
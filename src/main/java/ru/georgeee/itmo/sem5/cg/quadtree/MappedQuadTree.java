@@ -0,0 +1,373 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import lombok.Getter;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Read-mostly compressed quad tree, answering queries directly from file, written by {@link CompressedQuadTree#save(Path)}.
+ * File is memory-mapped, so opening it takes constant time and pages are shared between processes.
+ * <p>
+ * File format (big endian): header (magic, precision, number of points), then sectors in preorder,
+ * sub sectors of box go in Z-order (NW, NE, SW, SE):
+ * <ul>
+ * <li>point: byte 0, x, y</li>
+ * <li>box: byte mask of present sub sectors (non zero), depth, top left x, y, number of points, offset of the end of box</li>
+ * </ul>
+ * Mapped sectors are never turned into objects: modifications go to two small compressed quad trees,
+ * one with added points and one with removed points of file
+ */
+public class MappedQuadTree implements QuadTree {
+    private static final int MAGIC = 0x43515431;
+    private static final int HEADER_BYTES = 4 + 8 + 4;
+    private static final int POINT_BYTES = 1 + 8 + 8;
+    private static final int BOX_BYTES = 1 + 4 + 8 + 8 + 4 + 8;
+    private static final SubSectorType[] QUADRANTS = {SubSectorType.NW, SubSectorType.NE, SubSectorType.SW, SubSectorType.SE};
+    /**
+     * File is mapped with segments of 2^SEGMENT_BITS bytes (single mapping can't exceed 2GB)
+     */
+    private static final int SEGMENT_BITS = 30;
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    @Getter
+    private final double precision;
+    private final int segmentBits;
+    /**
+     * Segments overlap by size of the largest sector, so every sector can be read from single segment
+     */
+    private final MappedByteBuffer[] segments;
+    private final int mappedSize;
+    private CompressedQuadTree added;
+    private CompressedQuadTree removed;
+    private int addedCount;
+    private int removedCount;
+
+    public MappedQuadTree(Path path) throws IOException {
+        this(path, SEGMENT_BITS);
+    }
+
+    MappedQuadTree(Path path, int segmentBits) throws IOException {
+        this.segmentBits = segmentBits;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                throw new IOException(String.format("File %s is too short for quad tree: %d bytes", path, fileSize));
+            }
+            long segmentSize = 1L << segmentBits;
+            segments = new MappedByteBuffer[(int) ((fileSize - 1) >>> segmentBits) + 1];
+            for (int i = 0; i < segments.length; ++i) {
+                long from = (long) i << segmentBits;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(fileSize - from, segmentSize + BOX_BYTES));
+            }
+        }
+        ByteBuffer header = segments[0];
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException(String.format("File %s is not a quad tree: wrong magic %x", path, header.getInt(0)));
+        }
+        precision = header.getDouble(4);
+        mappedSize = header.getInt(12);
+    }
+
+    /**
+     * Writes sectors of compressed quad tree in format, described in {@link MappedQuadTree}
+     */
+    static void save(Sector root, double precision, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new Writer(channel);
+            writer.buffer.putInt(MAGIC).putDouble(precision).putInt(root == null ? 0 : root.getSize());
+            if (root != null) {
+                writer.write(root);
+            }
+            writer.flush();
+        }
+    }
+
+    private static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        /**
+         * Offset in file of the start of buffer
+         */
+        private long flushed;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(Sector sector) throws IOException {
+            if (sector instanceof PointSector) {
+                ensureRemaining(POINT_BYTES);
+                Point2d point = ((PointSector) sector).getPoint();
+                buffer.put((byte) 0).putDouble(point.getX()).putDouble(point.getY());
+                return;
+            }
+            BoxSector boxSector = (BoxSector) sector;
+            int mask = 0;
+            for (int i = 0; i < QUADRANTS.length; ++i) {
+                if (boxSector.getSubSector(QUADRANTS[i]) != null) {
+                    mask |= 1 << i;
+                }
+            }
+            ensureRemaining(BOX_BYTES);
+            Point2d topLeft = boxSector.getTopLeft();
+            buffer.put((byte) mask).putInt(boxSector.getDepth()).putDouble(topLeft.getX()).putDouble(topLeft.getY())
+                    .putInt(boxSector.getSize());
+            long endOffset = flushed + buffer.position();
+            buffer.putLong(0);
+            for (SubSectorType type : QUADRANTS) {
+                Sector subSector = boxSector.getSubSector(type);
+                if (subSector != null) {
+                    write(subSector);
+                }
+            }
+            long end = flushed + buffer.position();
+            if (endOffset >= flushed) {
+                buffer.putLong((int) (endOffset - flushed), end);
+            } else {
+                ByteBuffer patch = ByteBuffer.allocate(8).putLong(0, end);
+                while (patch.hasRemaining()) {
+                    channel.write(patch, endOffset + patch.position());
+                }
+            }
+        }
+
+        private void ensureRemaining(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, flushed + buffer.position());
+            }
+            flushed += buffer.limit();
+            buffer.clear();
+        }
+    }
+
+    private ByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> segmentBits)];
+    }
+
+    private int index(long offset) {
+        return (int) (offset & ((1L << segmentBits) - 1));
+    }
+
+    private int getMask(long offset) {
+        return segment(offset).get(index(offset));
+    }
+
+    private double getX(long offset) {
+        return segment(offset).getDouble(index(offset) + 1);
+    }
+
+    private double getY(long offset) {
+        return segment(offset).getDouble(index(offset) + 9);
+    }
+
+    private int getDepth(long offset) {
+        return segment(offset).getInt(index(offset) + 1);
+    }
+
+    private double getBoxX(long offset) {
+        return segment(offset).getDouble(index(offset) + 5);
+    }
+
+    private double getBoxY(long offset) {
+        return segment(offset).getDouble(index(offset) + 13);
+    }
+
+    private int getBoxSize(long offset) {
+        return segment(offset).getInt(index(offset) + 21);
+    }
+
+    /**
+     * @return offset of the end of sector
+     */
+    private long getEnd(long offset) {
+        if (getMask(offset) == 0) {
+            return offset + POINT_BYTES;
+        }
+        return segment(offset).getLong(index(offset) + 25);
+    }
+
+    private static int quadrant(SubSectorType type) {
+        int i = 0;
+        while (QUADRANTS[i] != type) {
+            i++;
+        }
+        return i;
+    }
+
+    private static double getLen(int depth) {
+        return 1 / Math.pow(2.0, depth);
+    }
+
+    /**
+     * @return offset of point of file, equal to given one, or -1
+     */
+    private long find(Point2d point) {
+        if (mappedSize == 0) {
+            return -1;
+        }
+        long offset = HEADER_BYTES;
+        int mask;
+        while ((mask = getMask(offset)) != 0) {
+            SubSectorType type = BoxSector.determineType(point, getBoxX(offset), getBoxY(offset), getLen(getDepth(offset)));
+            if (type == null) {
+                return -1;
+            }
+            int quadrant = quadrant(type);
+            if ((mask & (1 << quadrant)) == 0) {
+                return -1;
+            }
+            long child = offset + BOX_BYTES;
+            for (int i = 0; i < quadrant; ++i) {
+                if ((mask & (1 << i)) != 0) {
+                    child = getEnd(child);
+                }
+            }
+            offset = child;
+        }
+        return BoxSector.checkEquals(getX(offset), getY(offset), point.getX(), point.getY(), precision) ? offset : -1;
+    }
+
+    public int size() {
+        return mappedSize - removedCount + addedCount;
+    }
+
+    @Override
+    public boolean contains(Point2d point) {
+        if (added != null && added.contains(point)) {
+            return true;
+        }
+        return find(point) >= 0 && (removed == null || !removed.contains(point));
+    }
+
+    @Override
+    public boolean add(Point2d point) {
+        if (contains(point)) {
+            return false;
+        }
+        if (added == null) {
+            added = new CompressedQuadTree(precision);
+        }
+        added.add(point);
+        addedCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        if (added != null && added.remove(point)) {
+            addedCount--;
+            return true;
+        }
+        long offset = find(point);
+        if (offset < 0) {
+            return false;
+        }
+        if (removed == null) {
+            removed = new CompressedQuadTree(precision);
+        }
+        //Point of file is kept, so that range queries on removed tree match file
+        if (!removed.add(new Point2d(getX(offset), getY(offset)))) {
+            return false;
+        }
+        removedCount++;
+        return true;
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        if (mappedSize > 0) {
+            Consumer<Point2d> filtered = removedCount == 0 ? consumer : p -> {
+                if (!removed.contains(p)) {
+                    consumer.accept(p);
+                }
+            };
+            rangeQuery(HEADER_BYTES, topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), filtered);
+        }
+        if (added != null) {
+            added.rangeQuery(topLeft, bottomRight, consumer);
+        }
+    }
+
+    private void rangeQuery(long offset, double x1, double y1, double x2, double y2, Consumer<Point2d> consumer) {
+        int mask = getMask(offset);
+        if (mask == 0) {
+            double x = getX(offset), y = getY(offset);
+            if (x1 <= x && x <= x2 && y1 <= y && y <= y2) {
+                consumer.accept(new Point2d(x, y));
+            }
+            return;
+        }
+        double bx = getBoxX(offset), by = getBoxY(offset), len = getLen(getDepth(offset));
+        if (bx > x2 || by > y2 || bx + len <= x1 || by + len <= y1) {
+            return;
+        }
+        long end = getEnd(offset);
+        if (x1 <= bx && y1 <= by && bx + len <= x2 && by + len <= y2) {
+            //Points of box are stored contiguously, so they are just scanned
+            for (long child = offset + BOX_BYTES; child < end; ) {
+                if (getMask(child) == 0) {
+                    consumer.accept(new Point2d(getX(child), getY(child)));
+                    child += POINT_BYTES;
+                } else {
+                    child += BOX_BYTES;
+                }
+            }
+            return;
+        }
+        for (long child = offset + BOX_BYTES; child < end; child = getEnd(child)) {
+            rangeQuery(child, x1, y1, x2, y2, consumer);
+        }
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        int counter = 0;
+        if (mappedSize > 0) {
+            counter += rangeCount(HEADER_BYTES, topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY());
+        }
+        if (removed != null) {
+            counter -= removed.rangeCount(topLeft, bottomRight);
+        }
+        if (added != null) {
+            counter += added.rangeCount(topLeft, bottomRight);
+        }
+        return counter;
+    }
+
+    private int rangeCount(long offset, double x1, double y1, double x2, double y2) {
+        int mask = getMask(offset);
+        if (mask == 0) {
+            double x = getX(offset), y = getY(offset);
+            return x1 <= x && x <= x2 && y1 <= y && y <= y2 ? 1 : 0;
+        }
+        double bx = getBoxX(offset), by = getBoxY(offset), len = getLen(getDepth(offset));
+        if (bx > x2 || by > y2 || bx + len <= x1 || by + len <= y1) {
+            return 0;
+        }
+        if (x1 <= bx && y1 <= by && bx + len <= x2 && by + len <= y2) {
+            return getBoxSize(offset);
+        }
+        int counter = 0;
+        long end = getEnd(offset);
+        for (long child = offset + BOX_BYTES; child < end; child = getEnd(child)) {
+            counter += rangeCount(child, x1, y1, x2, y2);
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,180 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Z-order (Morton order) of points within [0; 1] x [0; 1]: points are compared by the first
+ * differing bit of interleaved binary representations of coordinates, y bit going before x bit of the same level.
+ * So points of every box are contiguous in this order and boxes follow each other as NW, NE, SW, SE
+ */
+class MortonOrder {
+    /**
+     * Number of bits of coordinate, kept in key: integer bit and 31 bits of fraction
+     */
+    private static final int KEY_COORD_BITS = 32;
+    private static final double KEY_SCALE = 1L << (KEY_COORD_BITS - 1);
+    /**
+     * Max depth of cells, distinguished by keys: cell of depth d consists of keys with the same 2(d + 1) leading bits
+     */
+    static final int KEY_DEPTH = KEY_COORD_BITS - 1;
+    private static final int RADIX_BITS = 8;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    static final Comparator<Point2d> COMPARATOR = MortonOrder::compare;
+
+    private MortonOrder() {
+    }
+
+    static int compare(Point2d p, Point2d q) {
+        return compare(p.getX(), p.getY(), q.getX(), q.getY());
+    }
+
+    static int compare(double px, double py, double qx, double qy) {
+        int ox = BoxSector.calcDepth(px, qx);
+        int oy = BoxSector.calcDepth(py, qy);
+        if (ox == Integer.MAX_VALUE && oy == Integer.MAX_VALUE) {
+            return 0;
+        }
+        return oy <= ox ? Double.compare(py, qy) : Double.compare(px, qx);
+    }
+
+    /**
+     * Computes Morton key of point, i.e. interleaved 32 leading bits of it's coordinates.
+     * Keys, compared as unsigned longs, agree with {@link #COMPARATOR} for all points with different keys
+     */
+    static long key(double x, double y) {
+        if (x < 0 || x > 1 || y < 0 || y > 1) {
+            throw new IllegalArgumentException("Passed x, y outside [0; 1]: " + x + " " + y);
+        }
+        return (spread((long) (y * KEY_SCALE)) << 1) | spread((long) (x * KEY_SCALE));
+    }
+
+    /**
+     * Moves i-th bit of 32-bit value to position 2i
+     */
+    private static long spread(long v) {
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    /**
+     * Sorts points in Z-order: LSD radix sort on Morton keys, then runs of equal keys are sorted with comparator.
+     * Sort is stable, i.e. indices of points, equal by comparator, remain in increasing order
+     *
+     * @return indices of points in sorted order
+     */
+    static int[] sortedOrder(Point2d[] points) {
+        int n = points.length;
+        long[] keys = new long[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; ++i) {
+            keys[i] = key(points[i].getX(), points[i].getY());
+            order[i] = i;
+        }
+        long[] keysBuffer = new long[n];
+        int[] orderBuffer = new int[n];
+        int[] counts = new int[(1 << RADIX_BITS) + 1];
+        for (int shift = 0; shift < 2 * KEY_COORD_BITS; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; ++i) {
+                counts[digit(keys[i], shift) + 1]++;
+            }
+            if (n == 0 || counts[digit(keys[0], shift) + 1] == n) {
+                continue;
+            }
+            for (int i = 1; i < counts.length; ++i) {
+                counts[i] += counts[i - 1];
+            }
+            for (int i = 0; i < n; ++i) {
+                int pos = counts[digit(keys[i], shift)]++;
+                keysBuffer[pos] = keys[i];
+                orderBuffer[pos] = order[i];
+            }
+            long[] keysTmp = keys;
+            keys = keysBuffer;
+            keysBuffer = keysTmp;
+            int[] orderTmp = order;
+            order = orderBuffer;
+            orderBuffer = orderTmp;
+        }
+        for (int from = 0, to; from < n; from = to) {
+            to = from + 1;
+            while (to < n && keys[to] == keys[from]) {
+                ++to;
+            }
+            if (to - from > 1) {
+                sortRun(points, order, from, to);
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Sorts points in Z-order and leaves only one point of each group of equal ones (the first in array).
+     * Equal points form contiguous runs in Z-order, as all of them lie within the same box with side less than precision
+     *
+     * @return indices of distinct points in sorted order
+     */
+    static int[] sortedDistinct(Point2d[] points, double precision) {
+        return distinct(points, sortedOrder(points), precision);
+    }
+
+    /**
+     * Leaves only one point of each group of equal ones (the first in array)
+     *
+     * @param order indices of points in Z-order, it's reused for result
+     * @return indices of distinct points in sorted order
+     */
+    static int[] distinct(Point2d[] points, int[] order, double precision) {
+        int count = 0;
+        for (int from = 0, to; from < order.length; from = to) {
+            int first = order[from];
+            for (to = from + 1; to < order.length && BoxSector.checkEquals(points[order[from]], points[order[to]], precision); ++to) {
+                first = Math.min(first, order[to]);
+            }
+            order[count++] = first;
+        }
+        return Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Returns index of cell of given depth, containing key, among cells of the same depth
+     * (indices of cells go in Z-order)
+     */
+    static long cell(long key, int depth) {
+        return key >>> (2 * (KEY_DEPTH - depth));
+    }
+
+    private static int digit(long key, int shift) {
+        return (int) (key >>> shift) & ((1 << RADIX_BITS) - 1);
+    }
+
+    private static void sortRun(Point2d[] points, int[] order, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; ++i) {
+                int idx = order[i];
+                int j = i;
+                for (; j > from && compare(points[order[j - 1]], points[idx]) > 0; --j) {
+                    order[j] = order[j - 1];
+                }
+                order[j] = idx;
+            }
+        } else {
+            Integer[] run = new Integer[to - from];
+            for (int i = from; i < to; ++i) {
+                run[i - from] = order[i];
+            }
+            Arrays.sort(run, (i, j) -> compare(points[i], points[j]));
+            for (int i = from; i < to; ++i) {
+                order[i] = run[i - from];
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Iterates over points of sector in order of increasing distance to query point.
+ * Sectors are kept in priority queue, keyed by distance to the closest point of sector,
+ * so box is expanded only when all closer points were already reported
+ */
+class NearestIterator implements Iterator<Point2d> {
+    private final Point2d query;
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+    NearestIterator(Sector root, Point2d query) {
+        this.query = query;
+        if (root != null) {
+            offer(root);
+        }
+    }
+
+    private void offer(Sector sector) {
+        if (sector instanceof BoxSector) {
+            queue.add(new Entry(sector, ((BoxSector) sector).distanceSq(query)));
+        } else if (sector != null && !((PointSector) sector).isSentinel()) {
+            queue.add(new Entry(sector, ((PointSector) sector).getPoint().distanceSq(query)));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!queue.isEmpty() && queue.peek().sector instanceof BoxSector) {
+            BoxSector boxSector = (BoxSector) queue.poll().sector;
+            for (SubSectorType type : SubSectorType.values()) {
+                offer(boxSector.getSubSector(type));
+            }
+        }
+        return !queue.isEmpty();
+    }
+
+    @Override
+    public Point2d next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return ((PointSector) queue.poll().sector).getPoint();
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final Sector sector;
+        private final double distanceSq;
+
+        Entry(Sector sector, double distanceSq) {
+            this.sector = sector;
+            this.distanceSq = distanceSq;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            if (distanceSq != o.distanceSq) {
+                return Double.compare(distanceSq, o.distanceSq);
+            }
+            //Points go before boxes of the same distance, so they are reported without expanding boxes
+            return Boolean.compare(sector instanceof BoxSector, o.sector instanceof BoxSector);
+        }
+    }
+}
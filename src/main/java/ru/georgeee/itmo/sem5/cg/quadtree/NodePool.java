@@ -0,0 +1,506 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Storage of compressed quad trees in primitive arrays: boxes and points are identified by int indices,
+ * their fields (coordinates, children, parent, link, size) are kept in parallel arrays.
+ * Several trees (e.g. layers of skip quad tree) may share one pool.
+ * <p>
+ * Sub sectors are referenced by int refs: 0 for empty sub sector, positive {@code box + 1} for box
+ * and negative {@code -point - 1} for point. Sub sectors of box are ordered as NW, NE, SW, SE.
+ * Freed boxes and points are kept in free lists (chained through parent arrays) and reused,
+ * {@link #compact(int[])} renumbers live nodes in preorder and shrinks arrays.
+ * Used only by experimental {@link PooledCompressedQuadTree} and {@link PooledSkipQuadTree}
+ */
+class NodePool {
+    static final int EMPTY = 0;
+    static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final double precision;
+    /**
+     * If set, points, placed at corners of unit square, are sentinels: they are not counted and not reported
+     */
+    private final boolean withSentinels;
+    private final double[] bounds = new double[3];
+
+    private double[] boxX, boxY, boxLen;
+    private int[] boxDepth, boxParent, boxLink, boxSize;
+    private int[] children;
+    private int boxCount, freeBox = NONE, freeBoxCount;
+
+    private double[] pointX, pointY;
+    private int[] pointParent;
+    private int pointCount, freePoint = NONE, freePointCount;
+
+    NodePool(double precision, boolean withSentinels) {
+        this.precision = precision;
+        this.withSentinels = withSentinels;
+        allocateBoxes(INITIAL_CAPACITY);
+        allocatePoints(INITIAL_CAPACITY);
+    }
+
+    static int boxRef(int box) {
+        return box + 1;
+    }
+
+    static int pointRef(int point) {
+        return -point - 1;
+    }
+
+    static boolean isBox(int ref) {
+        return ref > 0;
+    }
+
+    static boolean isPoint(int ref) {
+        return ref < 0;
+    }
+
+    static int box(int ref) {
+        return ref - 1;
+    }
+
+    static int point(int ref) {
+        return -ref - 1;
+    }
+
+    int getBoxCount() {
+        return boxCount - freeBoxCount;
+    }
+
+    int getPointCount() {
+        return pointCount - freePointCount;
+    }
+
+    int getDepth(int box) {
+        return boxDepth[box];
+    }
+
+    int getLink(int box) {
+        return boxLink[box];
+    }
+
+    void setLink(int box, int link) {
+        boxLink[box] = link;
+    }
+
+    int getSize(int ref) {
+        if (isBox(ref)) {
+            return boxSize[box(ref)];
+        }
+        return ref == EMPTY || isSentinel(point(ref)) ? 0 : 1;
+    }
+
+    /**
+     * Checks whether there are enough free nodes to make {@link #compact(int[])} worth it
+     */
+    boolean needsCompaction() {
+        return freeBoxCount + freePointCount > INITIAL_CAPACITY
+                && freeBoxCount + freePointCount > getBoxCount() + getPointCount();
+    }
+
+    int newPoint(double x, double y) {
+        int point = freePoint;
+        if (point == NONE) {
+            if (pointCount == pointX.length) {
+                allocatePoints(2 * pointCount);
+            }
+            point = pointCount++;
+        } else {
+            freePoint = pointParent[point];
+            freePointCount--;
+        }
+        pointX[point] = x;
+        pointY[point] = y;
+        pointParent[point] = NONE;
+        return point;
+    }
+
+    private int newBox(double x, double y, int depth, double len) {
+        int box = freeBox;
+        if (box == NONE) {
+            if (boxCount == boxX.length) {
+                allocateBoxes(2 * boxCount);
+            }
+            box = boxCount++;
+        } else {
+            freeBox = boxParent[box];
+            freeBoxCount--;
+        }
+        boxX[box] = x;
+        boxY[box] = y;
+        boxDepth[box] = depth;
+        boxLen[box] = len;
+        boxParent[box] = NONE;
+        boxLink[box] = NONE;
+        boxSize[box] = 0;
+        Arrays.fill(children, 4 * box, 4 * box + 4, EMPTY);
+        return box;
+    }
+
+    /**
+     * Creates the minimal box, containing both sectors. Sectors shouldn't be equal points
+     *
+     * @return index of created box
+     */
+    int newBox(int refA, int refB) {
+        int depth = BoxSector.findMinEnclosing(bounds, cornerX(refA), cornerY(refA), cornerX(refB), cornerY(refB));
+        if (depth == Integer.MAX_VALUE || bounds[2] < precision) {
+            throw new IllegalArgumentException("Can't create box for equal points");
+        }
+        int box = newBox(bounds[0], bounds[1], depth, bounds[2]);
+        setChild(box, quadrant(box, cornerX(refA), cornerY(refA)), refA);
+        setChild(box, quadrant(box, cornerX(refB), cornerY(refB)), refB);
+        boxSize[box] = getSize(refA) + getSize(refB);
+        return box;
+    }
+
+    private void freeBox(int box) {
+        boxParent[box] = freeBox;
+        freeBox = box;
+        freeBoxCount++;
+    }
+
+    private void freePoint(int point) {
+        pointParent[point] = freePoint;
+        freePoint = point;
+        freePointCount++;
+    }
+
+    private boolean isSentinel(int point) {
+        double x = pointX[point], y = pointY[point];
+        return withSentinels && (x == 0 && y == 0 || x == SkipQuadTree.CLOSEST_TO_ONE && y == SkipQuadTree.CLOSEST_TO_ONE);
+    }
+
+    private double cornerX(int ref) {
+        return isBox(ref) ? boxX[box(ref)] : pointX[point(ref)];
+    }
+
+    private double cornerY(int ref) {
+        return isBox(ref) ? boxY[box(ref)] : pointY[point(ref)];
+    }
+
+    /**
+     * Determines, which sub sector of box contains point
+     *
+     * @return index of sub sector (0 for NW, 1 for NE, 2 for SW, 3 for SE) or -1 if point is outside of box
+     */
+    int quadrant(int box, double x, double y) {
+        double bx = boxX[box], by = boxY[box], len = boxLen[box];
+        if (bx <= x && x < bx + len && by <= y && y < by + len) {
+            return (x < bx + len / 2 ? 0 : 1) | (y < by + len / 2 ? 0 : 2);
+        }
+        return -1;
+    }
+
+    private void setChild(int box, int quadrant, int ref) {
+        children[4 * box + quadrant] = ref;
+        if (isBox(ref)) {
+            int child = box(ref);
+            boxParent[child] = box;
+            if (boxLink[box] != NONE) {
+                boxLink[child] = findUnderlying(boxLink[box], boxX[child], boxY[child], boxDepth[child]);
+            }
+        } else if (isPoint(ref)) {
+            pointParent[point(ref)] = box;
+        }
+    }
+
+    /**
+     * Finds box with given top left corner and depth within subtree of box
+     */
+    int findUnderlying(int box, double x, double y, int depth) {
+        while (boxX[box] != x || boxY[box] != y || boxDepth[box] != depth) {
+            int quadrant = quadrant(box, x, y);
+            int ref = quadrant < 0 ? EMPTY : children[4 * box + quadrant];
+            if (!isBox(ref)) {
+                String msg = String.format("Box (%f, %f, depth=%d) is not set within box %d", x, y, depth, box);
+                throw new IllegalArgumentException(msg);
+            }
+            box = box(ref);
+        }
+        return box;
+    }
+
+    /**
+     * Finds the lowest box within subtree of box, containing point
+     *
+     * @return index of box or {@link #NONE} if point is outside of box
+     */
+    int findLowestPredecessor(int box, double x, double y) {
+        int quadrant = quadrant(box, x, y);
+        if (quadrant < 0) {
+            return NONE;
+        }
+        while (true) {
+            int ref = children[4 * box + quadrant];
+            if (!isBox(ref) || (quadrant = quadrant(box(ref), x, y)) < 0) {
+                return box;
+            }
+            box = box(ref);
+        }
+    }
+
+    boolean contains(int ref, double x, double y) {
+        if (isBox(ref)) {
+            int box = findLowestPredecessor(box(ref), x, y);
+            if (box == NONE) {
+                return false;
+            }
+            ref = children[4 * box + quadrant(box, x, y)];
+        }
+        return isPoint(ref) && BoxSector.checkEquals(pointX[point(ref)], pointY[point(ref)], x, y, precision);
+    }
+
+    /**
+     * Adds point to subtree of box, point should lie within box
+     *
+     * @return false if equal point already exists
+     */
+    boolean add(int box, double x, double y) {
+        int end = findLowestPredecessor(box, x, y);
+        int quadrant = quadrant(end, x, y);
+        int ref = children[4 * end + quadrant];
+        if (isPoint(ref) && BoxSector.checkEquals(pointX[point(ref)], pointY[point(ref)], x, y, precision)) {
+            return false;
+        }
+        int pointRef = pointRef(newPoint(x, y));
+        setChild(end, quadrant, ref == EMPTY ? pointRef : boxRef(newBox(ref, pointRef)));
+        updateSizes(end, getSize(pointRef));
+        return true;
+    }
+
+    /**
+     * Removes point from subtree of box. Boxes, left with single sub sector, are replaced with it,
+     * except box itself, which should be collapsed by {@link #collapse(int)}
+     *
+     * @return false if point is absent
+     */
+    boolean remove(int box, double x, double y) {
+        int end = findLowestPredecessor(box, x, y);
+        if (end == NONE) {
+            return false;
+        }
+        int quadrant = quadrant(end, x, y);
+        int ref = children[4 * end + quadrant];
+        if (!isPoint(ref) || !BoxSector.checkEquals(pointX[point(ref)], pointY[point(ref)], x, y, precision)) {
+            return false;
+        }
+        children[4 * end + quadrant] = EMPTY;
+        updateSizes(end, -getSize(ref));
+        freePoint(point(ref));
+        int parent = boxParent[end];
+        if (parent != NONE && countChildren(end) < 2) {
+            setChild(parent, quadrant(parent, boxX[end], boxY[end]), getNonEmpty(end));
+            freeBox(end);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces box with it's single sub sector, if it has only one
+     *
+     * @return ref of sector, which should replace box
+     */
+    int collapse(int box) {
+        if (countChildren(box) >= 2) {
+            return boxRef(box);
+        }
+        int ref = getNonEmpty(box);
+        if (isBox(ref)) {
+            boxParent[box(ref)] = NONE;
+        } else {
+            pointParent[point(ref)] = NONE;
+        }
+        freeBox(box);
+        return ref;
+    }
+
+    void removeTree(int ref) {
+        if (isBox(ref)) {
+            int box = box(ref);
+            for (int i = 0; i < 4; ++i) {
+                removeTree(children[4 * box + i]);
+            }
+            freeBox(box);
+        } else if (isPoint(ref)) {
+            freePoint(point(ref));
+        }
+    }
+
+    private void updateSizes(int box, int delta) {
+        for (; box != NONE; box = boxParent[box]) {
+            boxSize[box] += delta;
+        }
+    }
+
+    private int countChildren(int box) {
+        int counter = 0;
+        for (int i = 4 * box; i < 4 * box + 4; ++i) {
+            if (children[i] != EMPTY) counter++;
+        }
+        return counter;
+    }
+
+    private int getNonEmpty(int box) {
+        for (int i = 4 * box; i < 4 * box + 4; ++i) {
+            if (children[i] != EMPTY) return children[i];
+        }
+        throw new IllegalStateException("Box contains 0 entries: should have been at least 1: " + box);
+    }
+
+    void rangeQuery(int ref, double x1, double y1, double x2, double y2, Consumer<Point2d> consumer) {
+        if (isPoint(ref)) {
+            int point = point(ref);
+            double x = pointX[point], y = pointY[point];
+            if (x1 <= x && x <= x2 && y1 <= y && y <= y2 && !isSentinel(point)) {
+                consumer.accept(new Point2d(x, y));
+            }
+        } else if (isBox(ref)) {
+            int box = box(ref);
+            double bx = boxX[box], by = boxY[box], len = boxLen[box];
+            if (bx > x2 || by > y2 || bx + len <= x1 || by + len <= y1) {
+                return;
+            }
+            if (x1 <= bx && y1 <= by && bx + len <= x2 && by + len <= y2) {
+                x1 = y1 = Double.NEGATIVE_INFINITY;
+                x2 = y2 = Double.POSITIVE_INFINITY;
+            }
+            for (int i = 4 * box; i < 4 * box + 4; ++i) {
+                rangeQuery(children[i], x1, y1, x2, y2, consumer);
+            }
+        }
+    }
+
+    int rangeCount(int ref, double x1, double y1, double x2, double y2) {
+        if (isPoint(ref)) {
+            int point = point(ref);
+            double x = pointX[point], y = pointY[point];
+            return x1 <= x && x <= x2 && y1 <= y && y <= y2 && !isSentinel(point) ? 1 : 0;
+        } else if (isBox(ref)) {
+            int box = box(ref);
+            double bx = boxX[box], by = boxY[box], len = boxLen[box];
+            if (bx > x2 || by > y2 || bx + len <= x1 || by + len <= y1) {
+                return 0;
+            }
+            if (x1 <= bx && y1 <= by && bx + len <= x2 && by + len <= y2) {
+                return boxSize[box];
+            }
+            int counter = 0;
+            for (int i = 4 * box; i < 4 * box + 4; ++i) {
+                counter += rangeCount(children[i], x1, y1, x2, y2);
+            }
+            return counter;
+        }
+        return 0;
+    }
+
+    /**
+     * Renumbers live boxes and points in preorder of trees and shrinks arrays to fit them.
+     * All live nodes should be reachable from the given roots
+     *
+     * @param roots refs of tree roots, replaced with new refs
+     */
+    void compact(int[] roots) {
+        int[] newBoxes = new int[boxCount];
+        int[] newPoints = new int[pointCount];
+        int[] counters = new int[2];
+        for (int root : roots) {
+            renumber(root, newBoxes, newPoints, counters);
+        }
+        NodePool old = copyArrays();
+        boxX = boxY = boxLen = pointX = pointY = null;
+        boxDepth = boxParent = boxLink = boxSize = children = pointParent = null;
+        allocateBoxes(Math.max(INITIAL_CAPACITY, counters[0]));
+        allocatePoints(Math.max(INITIAL_CAPACITY, counters[1]));
+        for (int root : roots) {
+            move(old, root, NONE, newBoxes, newPoints);
+        }
+        for (int i = 0; i < roots.length; ++i) {
+            roots[i] = remap(roots[i], newBoxes, newPoints);
+        }
+        boxCount = counters[0];
+        pointCount = counters[1];
+        freeBox = freePoint = NONE;
+        freeBoxCount = freePointCount = 0;
+    }
+
+    private void renumber(int ref, int[] newBoxes, int[] newPoints, int[] counters) {
+        if (isBox(ref)) {
+            int box = box(ref);
+            newBoxes[box] = counters[0]++;
+            for (int i = 4 * box; i < 4 * box + 4; ++i) {
+                renumber(children[i], newBoxes, newPoints, counters);
+            }
+        } else if (isPoint(ref)) {
+            newPoints[point(ref)] = counters[1]++;
+        }
+    }
+
+    private static int remap(int ref, int[] newBoxes, int[] newPoints) {
+        if (isBox(ref)) {
+            return boxRef(newBoxes[box(ref)]);
+        }
+        return isPoint(ref) ? pointRef(newPoints[point(ref)]) : EMPTY;
+    }
+
+    private void move(NodePool old, int ref, int parent, int[] newBoxes, int[] newPoints) {
+        if (isBox(ref)) {
+            int box = box(ref), newBox = newBoxes[box];
+            boxX[newBox] = old.boxX[box];
+            boxY[newBox] = old.boxY[box];
+            boxLen[newBox] = old.boxLen[box];
+            boxDepth[newBox] = old.boxDepth[box];
+            boxSize[newBox] = old.boxSize[box];
+            boxParent[newBox] = parent;
+            boxLink[newBox] = old.boxLink[box] == NONE ? NONE : newBoxes[old.boxLink[box]];
+            for (int i = 0; i < 4; ++i) {
+                int child = old.children[4 * box + i];
+                children[4 * newBox + i] = remap(child, newBoxes, newPoints);
+                move(old, child, newBox, newBoxes, newPoints);
+            }
+        } else if (isPoint(ref)) {
+            int point = point(ref), newPoint = newPoints[point];
+            pointX[newPoint] = old.pointX[point];
+            pointY[newPoint] = old.pointY[point];
+            pointParent[newPoint] = parent;
+        }
+    }
+
+    private NodePool copyArrays() {
+        NodePool copy = new NodePool(precision, withSentinels);
+        copy.boxX = boxX;
+        copy.boxY = boxY;
+        copy.boxLen = boxLen;
+        copy.boxDepth = boxDepth;
+        copy.boxParent = boxParent;
+        copy.boxLink = boxLink;
+        copy.boxSize = boxSize;
+        copy.children = children;
+        copy.pointX = pointX;
+        copy.pointY = pointY;
+        copy.pointParent = pointParent;
+        return copy;
+    }
+
+    private void allocateBoxes(int capacity) {
+        boxX = boxX == null ? new double[capacity] : Arrays.copyOf(boxX, capacity);
+        boxY = boxY == null ? new double[capacity] : Arrays.copyOf(boxY, capacity);
+        boxLen = boxLen == null ? new double[capacity] : Arrays.copyOf(boxLen, capacity);
+        boxDepth = boxDepth == null ? new int[capacity] : Arrays.copyOf(boxDepth, capacity);
+        boxParent = boxParent == null ? new int[capacity] : Arrays.copyOf(boxParent, capacity);
+        boxLink = boxLink == null ? new int[capacity] : Arrays.copyOf(boxLink, capacity);
+        boxSize = boxSize == null ? new int[capacity] : Arrays.copyOf(boxSize, capacity);
+        children = children == null ? new int[4 * capacity] : Arrays.copyOf(children, 4 * capacity);
+    }
+
+    private void allocatePoints(int capacity) {
+        pointX = pointX == null ? new double[capacity] : Arrays.copyOf(pointX, capacity);
+        pointY = pointY == null ? new double[capacity] : Arrays.copyOf(pointY, capacity);
+        pointParent = pointParent == null ? new int[capacity] : Arrays.copyOf(pointParent, capacity);
+    }
+}
@@ -0,0 +1,257 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Builds compressed quad trees from many points at once on fork/join pool.
+ * Points are sorted in Z-order by buckets (cells of fixed depth), sorted in parallel.
+ * Tree of sorted leaves is built by divide and conquer: leaves are split into quadrants of their cell, trees of quadrants
+ * are built in parallel and then joined by {@link SortedTreeBuilder}, as if they were leaves
+ */
+class ParallelQuadTreeBuilder {
+    /**
+     * Ranges of leaves, smaller than this, are built sequentially
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+    /**
+     * Depth of cells, used as buckets for sorting
+     */
+    private static final int BUCKET_DEPTH = 7;
+
+    private ParallelQuadTreeBuilder() {
+    }
+
+    /**
+     * Parallel version of {@link MortonOrder#sortedDistinct(Point2d[], double)}
+     */
+    static int[] sortedDistinct(Point2d[] points, double precision, ForkJoinPool pool) {
+        int n = points.length;
+        int[] buckets = new int[n];
+        pool.submit(() -> IntStream.range(0, n).parallel()
+                .forEach(i -> buckets[i] = (int) MortonOrder.cell(MortonOrder.key(points[i].getX(), points[i].getY()), BUCKET_DEPTH)))
+                .join();
+        int[] starts = new int[(1 << (2 * BUCKET_DEPTH + 2)) + 1];
+        for (int bucket : buckets) {
+            starts[bucket + 1]++;
+        }
+        for (int i = 1; i < starts.length; ++i) {
+            starts[i] += starts[i - 1];
+        }
+        int[] order = new int[n];
+        int[] positions = Arrays.copyOf(starts, starts.length - 1);
+        for (int i = 0; i < n; ++i) {
+            order[positions[buckets[i]]++] = i;
+        }
+        pool.submit(() -> IntStream.range(0, starts.length - 1).parallel().forEach(bucket -> {
+            int from = starts[bucket], to = starts[bucket + 1];
+            if (to - from > 1) {
+                Point2d[] bucketPoints = new Point2d[to - from];
+                int[] indices = Arrays.copyOfRange(order, from, to);
+                for (int i = 0; i < indices.length; ++i) {
+                    bucketPoints[i] = points[indices[i]];
+                }
+                int[] bucketOrder = MortonOrder.sortedOrder(bucketPoints);
+                for (int i = 0; i < indices.length; ++i) {
+                    order[from + i] = indices[bucketOrder[i]];
+                }
+            }
+        })).join();
+        return MortonOrder.distinct(points, order, precision);
+    }
+
+    /**
+     * Builds compressed quad tree of points, going in given order (which should be Z-order of distinct points).
+     * Range of sorted points is split into four quadrants of it's cell (skipping levels, where all points
+     * fall into the same quadrant), subtrees of quadrants are built as fork/join tasks, then joined
+     * with boxes, found by {@link BoxSector#findMinEnclosing}
+     */
+    static Sector buildSorted(Point2d[] points, int[] order, double precision, ForkJoinPool pool) {
+        int count = order.length;
+        if (count == 0) {
+            return null;
+        }
+        PointSector[] leaves = new PointSector[count];
+        long[] keys = new long[count];
+        pool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> {
+            Point2d point = points[order[i]];
+            leaves[i] = new PointSector(point, precision);
+            keys[i] = MortonOrder.key(point.getX(), point.getY());
+        })).join();
+        return pool.invoke(new BuildTask(leaves, keys, 0, count, 0, precision));
+    }
+
+    /**
+     * Builds layers of skip quad tree: i-th layer consists of sentinels and points, which heights are greater than i.
+     * Members of all layers are collected in one pass over heights, layers are built in parallel,
+     * then boxes of each layer are linked to boxes of layer below
+     *
+     * @param points  distinct points in Z-order, not equal to sentinels
+     * @param heights number of layers, containing each point (at most layerCount)
+     * @return roots of layers, the lowest first
+     */
+    static BoxSector[] buildLayers(Point2d[] points, int[] heights, int layerCount, double precision, ForkJoinPool pool) {
+        long[] keys = new long[points.length];
+        pool.submit(() -> IntStream.range(0, points.length).parallel()
+                .forEach(i -> keys[i] = MortonOrder.key(points[i].getX(), points[i].getY())))
+                .join();
+        //Point of height h is a member of layers 0..h-1, so total size of layers is the sum of heights
+        int[] sizes = new int[layerCount];
+        for (int height : heights) {
+            for (int i = 0; i < height; ++i) {
+                sizes[i]++;
+            }
+        }
+        int[][] members = new int[layerCount][];
+        for (int i = 0; i < layerCount; ++i) {
+            members[i] = new int[sizes[i]];
+            sizes[i] = 0;
+        }
+        for (int j = 0; j < heights.length; ++j) {
+            for (int i = 0; i < heights[j]; ++i) {
+                members[i][sizes[i]++] = j;
+            }
+        }
+        BoxSector[] roots = new BoxSector[layerCount];
+        pool.submit(() -> IntStream.range(0, layerCount).parallel()
+                .forEach(i -> roots[i] = buildLayer(points, keys, members[i], precision)))
+                .join();
+        pool.submit(() -> IntStream.range(1, layerCount).parallel()
+                .forEach(i -> new LinkTask(roots[i], roots[i - 1]).invoke()))
+                .join();
+        return roots;
+    }
+
+    /**
+     * @param members indices of points of layer, in Z-order
+     */
+    private static BoxSector buildLayer(Point2d[] points, long[] keys, int[] members, double precision) {
+        int count = members.length + 2;
+        PointSector[] leaves = new PointSector[count];
+        long[] leafKeys = new long[count];
+        leaves[0] = new PointSector(SkipQuadTree.ZERO_POINT, precision, true);
+        leafKeys[0] = MortonOrder.key(SkipQuadTree.ZERO_POINT.getX(), SkipQuadTree.ZERO_POINT.getY());
+        for (int i = 0; i < members.length; ++i) {
+            leaves[i + 1] = new PointSector(points[members[i]], precision);
+            leafKeys[i + 1] = keys[members[i]];
+        }
+        leaves[count - 1] = new PointSector(SkipQuadTree.ONE_POINT, precision, true);
+        leafKeys[count - 1] = MortonOrder.key(SkipQuadTree.ONE_POINT.getX(), SkipQuadTree.ONE_POINT.getY());
+        return (BoxSector) new BuildTask(leaves, leafKeys, 0, count, 0, precision).invoke();
+    }
+
+    private static class BuildTask extends RecursiveTask<Sector> {
+        private static final long serialVersionUID = 1L;
+
+        private final PointSector[] leaves;
+        private final long[] keys;
+        private final int from, to;
+        /**
+         * All leaves of range lie within one cell of this depth (or it's 0)
+         */
+        private final int depth;
+        private final double precision;
+
+        BuildTask(PointSector[] leaves, long[] keys, int from, int to, int depth, double precision) {
+            this.leaves = leaves;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+            this.precision = precision;
+        }
+
+        @Override
+        protected Sector compute() {
+            if (to - from > SEQUENTIAL_THRESHOLD) {
+                for (int d = depth + 1; d <= MortonOrder.KEY_DEPTH; ++d) {
+                    List<BuildTask> parts = split(d);
+                    if (parts.size() > 1) {
+                        invokeAll(parts);
+                        SortedTreeBuilder builder = new SortedTreeBuilder(precision);
+                        for (BuildTask part : parts) {
+                            builder.append(part.join(), leaves[part.from].getPoint(), leaves[part.to - 1].getPoint());
+                        }
+                        return builder.build();
+                    }
+                }
+            }
+            return CompressedQuadTree.buildSorted(leaves, from, to, precision);
+        }
+
+        /**
+         * Splits range by cells of given depth (i.e. into quadrants, if range lies within one cell of depth d - 1)
+         */
+        private List<BuildTask> split(int d) {
+            List<BuildTask> parts = new ArrayList<>();
+            for (int start = from, end; start < to; start = end) {
+                long cell = MortonOrder.cell(keys[start], d);
+                int lo = start + 1, hi = to;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (MortonOrder.cell(keys[mid], d) == cell) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                end = lo;
+                parts.add(new BuildTask(leaves, keys, start, end, d, precision));
+            }
+            return parts;
+        }
+    }
+
+    /**
+     * Links every box of upper layer to the box of lower layer with the same corner and depth
+     */
+    private static class LinkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BoxSector upper, lower;
+
+        LinkTask(BoxSector upper, BoxSector lower) {
+            this.upper = upper;
+            this.lower = lower;
+        }
+
+        @Override
+        protected void compute() {
+            List<LinkTask> forked = new ArrayList<>();
+            Deque<BoxSector> uppers = new ArrayDeque<>(), lowers = new ArrayDeque<>();
+            uppers.push(upper);
+            lowers.push(lower);
+            while (!uppers.isEmpty()) {
+                BoxSector box = uppers.pop(), underlying = lowers.pop();
+                box.setLink(underlying);
+                for (SubSectorType type : SubSectorType.values()) {
+                    Sector subSector = box.getSubSector(type);
+                    if (subSector instanceof BoxSector) {
+                        BoxSector subBox = (BoxSector) subSector;
+                        BoxSector subUnderlying = underlying.findUnderlying(subBox.getTopLeft(), subBox.getDepth());
+                        if (subBox.getSize() > SEQUENTIAL_THRESHOLD) {
+                            LinkTask task = new LinkTask(subBox, subUnderlying);
+                            task.fork();
+                            forked.add(task);
+                        } else {
+                            uppers.push(subBox);
+                            lowers.push(subUnderlying);
+                        }
+                    }
+                }
+            }
+            for (LinkTask task : forked) {
+                task.join();
+            }
+        }
+    }
+}
@@ -1,27 +1,43 @@
 package ru.georgeee.itmo.sem5.cg.quadtree;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import ru.georgeee.itmo.sem5.cg.common.Point2d;
 
 import java.util.Objects;
+import java.util.function.Consumer;
 
 @ToString(of = {"point"})
 class PointSector implements Sector {
     @Getter
     private final Point2d point;
     private final double precision;
+    /**
+     * Sentinel points are kept by structure itself (e.g. corners of skip quad tree layers)
+     * and aren't reported by queries
+     */
+    @Getter
+    private final boolean sentinel;
     @Getter
     @Setter
     private BoxSector parent;
+    @Getter
+    @Setter(AccessLevel.PACKAGE)
+    private int epoch;
 
     public PointSector(Point2d point, double precision) {
+        this(point, precision, false);
+    }
+
+    public PointSector(Point2d point, double precision, boolean sentinel) {
         if (point == null) {
             throw new NullPointerException();
         }
         this.point = point;
         this.precision = precision;
+        this.sentinel = sentinel;
     }
 
     @Override
@@ -29,22 +45,37 @@ class PointSector implements Sector {
         return point;
     }
 
+    @Override
+    public int getSize() {
+        return sentinel ? 0 : 1;
+    }
+
     @Override
     public boolean contains(Point2d point) {
         return BoxSector.checkEquals(this.point, point, precision);
     }
 
     @Override
-    public BoxSector add(Point2d point) {
-        return new BoxSector(this, new PointSector(point, precision), precision);
+    public void forEachPoint(Consumer<Point2d> consumer) {
+        if (!sentinel) {
+            consumer.accept(point);
+        }
     }
 
     @Override
-    public BoxSector remove(Point2d point) {
-        if (BoxSector.checkEquals(this.point, point, precision)) {
-            return null;
+    public void rangeQuery(double x1, double y1, double x2, double y2, Consumer<Point2d> consumer) {
+        if (!sentinel && isWithin(point, x1, y1, x2, y2)) {
+            consumer.accept(point);
         }
-        throw new PointIsAbsentException(point);
+    }
+
+    @Override
+    public int rangeCount(double x1, double y1, double x2, double y2) {
+        return !sentinel && isWithin(point, x1, y1, x2, y2) ? 1 : 0;
+    }
+
+    static boolean isWithin(Point2d point, double x1, double y1, double x2, double y2) {
+        return x1 <= point.getX() && point.getX() <= x2 && y1 <= point.getY() && point.getY() <= y2;
     }
 
     @Override
@@ -0,0 +1,86 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.function.Consumer;
+
+/**
+ * Compressed quad tree, kept in {@link NodePool} instead of {@link BoxSector}/{@link PointSector} objects.
+ * Experimental: it's a separate implementation, kept to compare memory layouts, so it has neither snapshots,
+ * nor cursors, nor bulk load of {@link CompressedQuadTree}, and changes of the latter aren't ported here.
+ * It's checked by the same shared tests as other quad trees
+ */
+public class PooledCompressedQuadTree implements QuadTree {
+    private final NodePool pool;
+    private int root = NodePool.EMPTY;
+
+    public PooledCompressedQuadTree() {
+        this(0);
+    }
+
+    public PooledCompressedQuadTree(double precision) {
+        this.pool = new NodePool(precision, false);
+    }
+
+    public int size() {
+        return pool.getSize(root);
+    }
+
+    @Override
+    public boolean contains(Point2d point) {
+        return pool.contains(root, point.getX(), point.getY());
+    }
+
+    @Override
+    public boolean add(Point2d point) {
+        double x = point.getX(), y = point.getY();
+        if (NodePool.isBox(root) && pool.quadrant(NodePool.box(root), x, y) >= 0) {
+            return pool.add(NodePool.box(root), x, y);
+        }
+        if (pool.contains(root, x, y)) {
+            return false;
+        }
+        int pointRef = NodePool.pointRef(pool.newPoint(x, y));
+        root = root == NodePool.EMPTY ? pointRef : NodePool.boxRef(pool.newBox(root, pointRef));
+        return true;
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        double x = point.getX(), y = point.getY();
+        if (NodePool.isBox(root)) {
+            if (!pool.remove(NodePool.box(root), x, y)) {
+                return false;
+            }
+            root = pool.collapse(NodePool.box(root));
+        } else if (pool.contains(root, x, y)) {
+            pool.removeTree(root);
+            root = NodePool.EMPTY;
+        } else {
+            return false;
+        }
+        if (pool.needsCompaction()) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Renumbers nodes of tree in preorder and releases memory of removed ones
+     */
+    public void compact() {
+        int[] roots = {root};
+        pool.compact(roots);
+        root = roots[0];
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        pool.rangeQuery(root, topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), consumer);
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        return pool.rangeCount(root, topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY());
+    }
+}
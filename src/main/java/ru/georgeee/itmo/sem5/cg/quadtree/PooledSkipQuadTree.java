@@ -0,0 +1,214 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+import ru.georgeee.itmo.sem5.cg.common.Utils;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static ru.georgeee.itmo.sem5.cg.quadtree.SkipQuadTree.CLOSEST_TO_ONE;
+import static ru.georgeee.itmo.sem5.cg.quadtree.SkipQuadTree.ONE_POINT;
+import static ru.georgeee.itmo.sem5.cg.quadtree.SkipQuadTree.ZERO_POINT;
+
+/**
+ * Skip quad tree, which layers are kept in one {@link NodePool} instead of {@link BoxSector}/{@link PointSector} objects.
+ * Experimental, like {@link PooledCompressedQuadTree}: it has only basic operations of {@link SkipQuadTree}
+ * (no cursors, batched operations or approximate queries)
+ */
+public class PooledSkipQuadTree implements QuadTree {
+    private final Coin coin;
+    private final double precision;
+    private final NodePool pool;
+
+    /**
+     * Points, equal to corners of layer's square (which are kept in each layer as sentinels)
+     */
+    private Point2d zeroPoint, onePoint;
+
+    private int[] layers = new int[1];
+    private int layerCount;
+    private int[] predChain = new int[1];
+
+    public PooledSkipQuadTree() {
+        this(null, 0);
+    }
+
+    public PooledSkipQuadTree(Coin coin) {
+        this(coin, 0);
+    }
+
+    public PooledSkipQuadTree(Coin coin, double precision) {
+        this.coin = coin != null ? coin : createRandomCoin();
+        this.precision = precision;
+        this.pool = new NodePool(precision, true);
+    }
+
+    private static Coin createRandomCoin() {
+        Random random = Utils.createRandom();
+        return (i, p) -> random.nextBoolean();
+    }
+
+    @Override
+    public boolean contains(Point2d point) {
+        if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
+            return zeroPoint != null;
+        }
+        if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
+            return onePoint != null;
+        }
+        if (layerCount == 0) return false;
+        return pool.contains(NodePool.boxRef(findBottomPredecessor(point.getX(), point.getY())), point.getX(), point.getY());
+    }
+
+    @Override
+    public boolean add(Point2d point) {
+        if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
+            boolean contained = zeroPoint != null;
+            if (!contained) {
+                zeroPoint = point;
+            }
+            return !contained;
+        }
+        if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
+            boolean contained = onePoint != null;
+            if (!contained) {
+                onePoint = point;
+            }
+            return !contained;
+        }
+        double x = point.getX(), y = point.getY();
+        if (layerCount > 0) {
+            fillPredecessorChain(x, y);
+        }
+        int i;
+        for (i = 0; i < layerCount; ++i) {
+            if (i > 0 && !coin.decide(i, point)) break;
+            if (!pool.add(predChain[i], x, y)) {
+                if (i == 0) {
+                    return false;
+                }
+                throw new IllegalStateException("Point exists in upper layer, being absent at lower");
+            }
+        }
+        if (i == layerCount) {
+            for (i = layerCount; i == 0 || coin.decide(i, point); ++i) {
+                int head = createLayer();
+                if (i > 0) {
+                    pool.setLink(head, layers[i - 1]);
+                }
+                pool.add(head, x, y);
+                if (layerCount == layers.length) {
+                    layers = Arrays.copyOf(layers, 2 * layerCount);
+                    predChain = new int[2 * layerCount];
+                }
+                layers[layerCount++] = head;
+            }
+        }
+        return true;
+    }
+
+    private int createLayer() {
+        int zero = NodePool.pointRef(pool.newPoint(0, 0));
+        int one = NodePool.pointRef(pool.newPoint(CLOSEST_TO_ONE, CLOSEST_TO_ONE));
+        return pool.newBox(zero, one);
+    }
+
+    /**
+     * Descends through the layers to the lowest predecessor of point in the lowest layer.
+     * Unlike {@link #fillPredecessorChain(double, double)} it doesn't write predecessor chain, so reads may be concurrent
+     */
+    private int findBottomPredecessor(double x, double y) {
+        int pred = layers[layerCount - 1];
+        for (int i = layerCount - 1; ; --i) {
+            pred = pool.findLowestPredecessor(pred, x, y);
+            if (pred == NodePool.NONE) {
+                throw new IllegalArgumentException("Point is outside of unit square: " + x + " " + y);
+            }
+            if (i == 0) {
+                return pred;
+            }
+            pred = pool.getLink(pred);
+        }
+    }
+
+    private void fillPredecessorChain(double x, double y) {
+        int pred = NodePool.NONE;
+        for (int i = layerCount - 1; i >= 0; --i) {
+            pred = pool.findLowestPredecessor(i == layerCount - 1 ? layers[i] : pool.getLink(pred), x, y);
+            if (pred == NodePool.NONE) {
+                throw new IllegalArgumentException("Point is outside of unit square: " + x + " " + y);
+            }
+            predChain[i] = pred;
+        }
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
+            boolean contained = zeroPoint != null;
+            zeroPoint = null;
+            return contained;
+        }
+        if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
+            boolean contained = onePoint != null;
+            onePoint = null;
+            return contained;
+        }
+        if (layerCount == 0) return false;
+        fillPredecessorChain(point.getX(), point.getY());
+        for (int i = 0; i < layerCount; ++i) {
+            if (!pool.remove(predChain[i], point.getX(), point.getY())) {
+                return i > 0;
+            }
+        }
+        if (pool.needsCompaction()) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Renumbers nodes of layers in preorder and releases memory of removed ones
+     */
+    public void compact() {
+        int[] roots = new int[layerCount];
+        for (int i = 0; i < layerCount; ++i) {
+            roots[i] = NodePool.boxRef(layers[i]);
+        }
+        pool.compact(roots);
+        for (int i = 0; i < layerCount; ++i) {
+            layers[i] = NodePool.box(roots[i]);
+        }
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        double x1 = topLeft.getX(), y1 = topLeft.getY(), x2 = bottomRight.getX(), y2 = bottomRight.getY();
+        if (zeroPoint != null && PointSector.isWithin(zeroPoint, x1, y1, x2, y2)) {
+            consumer.accept(zeroPoint);
+        }
+        if (layerCount > 0) {
+            pool.rangeQuery(NodePool.boxRef(layers[0]), x1, y1, x2, y2, consumer);
+        }
+        if (onePoint != null && PointSector.isWithin(onePoint, x1, y1, x2, y2)) {
+            consumer.accept(onePoint);
+        }
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        double x1 = topLeft.getX(), y1 = topLeft.getY(), x2 = bottomRight.getX(), y2 = bottomRight.getY();
+        int counter = 0;
+        if (zeroPoint != null && PointSector.isWithin(zeroPoint, x1, y1, x2, y2)) {
+            counter++;
+        }
+        if (layerCount > 0) {
+            counter += pool.rangeCount(NodePool.boxRef(layers[0]), x1, y1, x2, y2);
+        }
+        if (onePoint != null && PointSector.isWithin(onePoint, x1, y1, x2, y2)) {
+            counter++;
+        }
+        return counter;
+    }
+}
@@ -0,0 +1,63 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+/**
+ * Box geometry and management of box children, shared by trees with own node types
+ * ({@link QuadTreeMap}, {@link BucketQuadTree}, {@link GridQuadTree}).
+ * These trees don't reuse {@link BoxSector}: it's sub sectors are {@link Sector}s, linked into layers of skip quad tree
+ * and shared with snapshots, while their boxes keep own data (aggregates, bucketed leaves, integer cells).
+ * Children of box are kept in array of four, indexed by ordinal of {@link SubSectorType} (i.e. quadrant)
+ */
+class QuadBoxes {
+    private QuadBoxes() {
+    }
+
+    /**
+     * Checks whether box [bx; bx + len) x [by; by + len) has no common points with rectangle [x1; x2] x [y1; y2]
+     */
+    static boolean isDisjoint(double bx, double by, double len, double x1, double y1, double x2, double y2) {
+        return bx > x2 || by > y2 || bx + len <= x1 || by + len <= y1;
+    }
+
+    /**
+     * Checks whether box [bx; bx + len) x [by; by + len) lies within rectangle [x1; x2] x [y1; y2]
+     */
+    static boolean isInside(double bx, double by, double len, double x1, double y1, double x2, double y2) {
+        return x1 <= bx && y1 <= by && bx + len <= x2 && by + len <= y2;
+    }
+
+    static int indexOf(Object[] children, Object child) {
+        for (int i = 0; i < children.length; ++i) {
+            if (children[i] == child) {
+                return i;
+            }
+        }
+        throw new IllegalStateException(String.format("Node %s isn't a child of box", child));
+    }
+
+    /**
+     * @return the only child, or null if there are several children
+     */
+    static <T> T getSingleChild(T[] children) {
+        T single = null;
+        for (T child : children) {
+            if (child != null) {
+                if (single != null) {
+                    return null;
+                }
+                single = child;
+            }
+        }
+        return single;
+    }
+
+    /**
+     * Removes child of box. Box should contain at least two children,
+     * so if it's left with the only one, box should be replaced with it in parent
+     *
+     * @return the only remaining child or null, if there are several of them
+     */
+    static <T> T removeChild(T[] children, int index) {
+        children[index] = null;
+        return getSingleChild(children);
+    }
+}
@@ -2,10 +2,43 @@ package ru.georgeee.itmo.sem5.cg.quadtree;
 
 import ru.georgeee.itmo.sem5.cg.common.Point2d;
 
-public interface QuadTree {
-    boolean contains(Point2d point);
+import java.util.Collection;
 
+/**
+ * Quad tree over points of unit square: read operations of {@link QuadTreeView} together with changes
+ */
+public interface QuadTree extends QuadTreeView {
     boolean add(Point2d point);
 
     boolean remove(Point2d point);
+
+    /**
+     * Adds every point of collection
+     *
+     * @return number of points added (i.e. for which {@link #add(Point2d)} would return true)
+     */
+    default int addAll(Collection<Point2d> points) {
+        int counter = 0;
+        for (Point2d point : points) {
+            if (add(point)) {
+                counter++;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Removes every point of collection
+     *
+     * @return number of points removed
+     */
+    default int removeAll(Collection<Point2d> points) {
+        int counter = 0;
+        for (Point2d point : points) {
+            if (remove(point)) {
+                counter++;
+            }
+        }
+        return counter;
+    }
 }
@@ -0,0 +1,64 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.Collection;
+
+/**
+ * Finger over quad tree: cursor remembers boxes, reached by it's last operation,
+ * and next operation climbs from them only until box contains the point, then descends.
+ * So consecutive operations on close points take time, logarithmic in distance between them, rather than in size of tree.
+ * Tree may be changed bypassing cursor (by tree itself or by other cursors), then cursor's finger is reset to the root
+ */
+public interface QuadTreeCursor {
+    boolean contains(Point2d point);
+
+    boolean add(Point2d point);
+
+    boolean remove(Point2d point);
+
+    /**
+     * Adds points, going through them in Z-order. Of points, equal to each other, the first one in Z-order is added
+     *
+     * @return number of points added
+     */
+    default int addAll(Collection<Point2d> points) {
+        Point2d[] array = points.toArray(new Point2d[points.size()]);
+        int counter = 0;
+        for (int index : MortonOrder.sortedOrder(array)) {
+            if (add(array[index])) {
+                counter++;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Removes points, going through them in Z-order
+     *
+     * @return number of points removed
+     */
+    default int removeAll(Collection<Point2d> points) {
+        Point2d[] array = points.toArray(new Point2d[points.size()]);
+        int counter = 0;
+        for (int index : MortonOrder.sortedOrder(array)) {
+            if (remove(array[index])) {
+                counter++;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Checks points, going through them in Z-order
+     */
+    default boolean containsAll(Collection<Point2d> points) {
+        Point2d[] array = points.toArray(new Point2d[points.size()]);
+        for (int index : MortonOrder.sortedOrder(array)) {
+            if (!contains(array[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,313 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Compressed quad tree, mapping points to values. Every box keeps aggregate of values of it's subtree
+ * (see {@link Aggregator}), which is recomputed from sub sectors along parent links on every change,
+ * so range aggregate combines aggregates of boxes, lying within rectangle, instead of visiting their points.
+ * Boxes are the same as {@link BoxSector}s of {@link CompressedQuadTree} with the same points,
+ * but are kept in own nodes (see {@link QuadBoxes})
+ */
+public class QuadTreeMap<V, A> {
+    private final Aggregator<? super V, A> aggregator;
+    private final double precision;
+    private Node<V, A> root;
+    private int size;
+
+    public QuadTreeMap(Aggregator<? super V, A> aggregator) {
+        this(aggregator, 0);
+    }
+
+    public QuadTreeMap(Aggregator<? super V, A> aggregator, double precision) {
+        this.aggregator = aggregator;
+        this.precision = precision;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Point2d point) {
+        return find(point) != null;
+    }
+
+    /**
+     * @return value of point, equal to given one, or null if there is no such point
+     */
+    public V get(Point2d point) {
+        Leaf<V, A> leaf = find(point);
+        return leaf == null ? null : leaf.value;
+    }
+
+    private Leaf<V, A> find(Point2d point) {
+        Node<V, A> node = root;
+        while (node instanceof Box) {
+            Box<V, A> box = (Box<V, A>) node;
+            SubSectorType type = box.determineType(point);
+            if (type == null) {
+                return null;
+            }
+            node = box.children[type.ordinal()];
+        }
+        Leaf<V, A> leaf = (Leaf<V, A>) node;
+        return leaf != null && BoxSector.checkEquals(leaf.point, point, precision) ? leaf : null;
+    }
+
+    /**
+     * Maps point to value. If equal point already exists, it's value is replaced (point itself is kept)
+     *
+     * @return previous value or null, if point was absent
+     */
+    public V put(Point2d point, V value) {
+        Leaf<V, A> leaf = new Leaf<>(point, value);
+        if (root == null) {
+            root = leaf;
+            size++;
+            return null;
+        }
+        Box<V, A> parent = null;
+        int index = 0;
+        Node<V, A> node = root;
+        while (node instanceof Box) {
+            SubSectorType type = ((Box<V, A>) node).determineType(point);
+            if (type == null) {
+                break;
+            }
+            parent = (Box<V, A>) node;
+            index = type.ordinal();
+            node = parent.children[index];
+        }
+        if (node instanceof Leaf && BoxSector.checkEquals(((Leaf<V, A>) node).point, point, precision)) {
+            Leaf<V, A> existing = (Leaf<V, A>) node;
+            V previous = existing.value;
+            existing.value = value;
+            updateAggregates(parent);
+            return previous;
+        }
+        Node<V, A> child = leaf;
+        if (node != null) {
+            //Node doesn't contain point, so they are joined by the lowest box, containing both
+            double[] bounds = new double[3];
+            BoxSector.findMinEnclosing(bounds, node.getX(), node.getY(), point.getX(), point.getY());
+            Box<V, A> box = new Box<>(bounds[0], bounds[1], bounds[2]);
+            box.attach(node);
+            box.attach(leaf);
+            box.aggregate = box.computeAggregate(aggregator);
+            child = box;
+        }
+        if (parent == null) {
+            root = child;
+        } else {
+            parent.children[index] = child;
+            child.parent = parent;
+        }
+        size++;
+        updateAggregates(parent);
+        return null;
+    }
+
+    /**
+     * Removes point, equal to given one
+     *
+     * @return it's value or null, if there is no such point
+     */
+    public V remove(Point2d point) {
+        Leaf<V, A> leaf = find(point);
+        if (leaf == null) {
+            return null;
+        }
+        size--;
+        Box<V, A> parent = leaf.parent;
+        if (parent == null) {
+            root = null;
+            return leaf.value;
+        }
+        Node<V, A> remaining = QuadBoxes.removeChild(parent.children, QuadBoxes.indexOf(parent.children, leaf));
+        if (remaining == null) {
+            updateAggregates(parent);
+            return leaf.value;
+        }
+        //Box with one child is replaced with it
+        Box<V, A> grandParent = parent.parent;
+        remaining.parent = grandParent;
+        if (grandParent == null) {
+            root = remaining;
+        } else {
+            grandParent.children[QuadBoxes.indexOf(grandParent.children, parent)] = remaining;
+        }
+        updateAggregates(grandParent);
+        return leaf.value;
+    }
+
+    /**
+     * Recomputes aggregates of box and all it's ancestors
+     */
+    private void updateAggregates(Box<V, A> box) {
+        for (; box != null; box = box.parent) {
+            box.aggregate = box.computeAggregate(aggregator);
+        }
+    }
+
+    /**
+     * @return aggregate of all values
+     */
+    public A aggregate() {
+        return root == null ? aggregator.identity() : root.getAggregate(aggregator);
+    }
+
+    /**
+     * Aggregates values of points p, such that topLeft.x &lt;= p.x &lt;= bottomRight.x and topLeft.y &lt;= p.y &lt;= bottomRight.y.
+     * Boxes, lying within rectangle, contribute their aggregates, so only boxes crossing it's border are visited
+     */
+    public A rangeAggregate(Point2d topLeft, Point2d bottomRight) {
+        if (root == null) {
+            return aggregator.identity();
+        }
+        return rangeAggregate(root, topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY());
+    }
+
+    private A rangeAggregate(Node<V, A> node, double x1, double y1, double x2, double y2) {
+        if (node instanceof Leaf) {
+            Leaf<V, A> leaf = (Leaf<V, A>) node;
+            return PointSector.isWithin(leaf.point, x1, y1, x2, y2) ? aggregator.lift(leaf.value) : aggregator.identity();
+        }
+        Box<V, A> box = (Box<V, A>) node;
+        if (QuadBoxes.isDisjoint(box.x, box.y, box.len, x1, y1, x2, y2)) {
+            return aggregator.identity();
+        }
+        if (QuadBoxes.isInside(box.x, box.y, box.len, x1, y1, x2, y2)) {
+            return box.aggregate;
+        }
+        A result = aggregator.identity();
+        for (Node<V, A> child : box.children) {
+            if (child != null) {
+                result = aggregator.combine(result, rangeAggregate(child, x1, y1, x2, y2));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Passes to consumer every point within rectangle together with it's value
+     */
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, BiConsumer<Point2d, ? super V> consumer) {
+        if (root != null) {
+            rangeQuery(root, topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(), consumer);
+        }
+    }
+
+    private static <V, A> void rangeQuery(Node<V, A> node, double x1, double y1, double x2, double y2,
+                                          BiConsumer<Point2d, ? super V> consumer) {
+        if (node instanceof Leaf) {
+            Leaf<V, A> leaf = (Leaf<V, A>) node;
+            if (PointSector.isWithin(leaf.point, x1, y1, x2, y2)) {
+                consumer.accept(leaf.point, leaf.value);
+            }
+            return;
+        }
+        Box<V, A> box = (Box<V, A>) node;
+        if (!QuadBoxes.isDisjoint(box.x, box.y, box.len, x1, y1, x2, y2)) {
+            for (Node<V, A> child : box.children) {
+                if (child != null) {
+                    rangeQuery(child, x1, y1, x2, y2, consumer);
+                }
+            }
+        }
+    }
+
+    private abstract static class Node<V, A> {
+        Box<V, A> parent;
+
+        /**
+         * @return top left corner of box or point of leaf
+         */
+        abstract double getX();
+
+        abstract double getY();
+
+        abstract A getAggregate(Aggregator<? super V, A> aggregator);
+    }
+
+    private static class Leaf<V, A> extends Node<V, A> {
+        private final Point2d point;
+        private V value;
+
+        Leaf(Point2d point, V value) {
+            this.point = point;
+            this.value = value;
+        }
+
+        @Override
+        double getX() {
+            return point.getX();
+        }
+
+        @Override
+        double getY() {
+            return point.getY();
+        }
+
+        @Override
+        A getAggregate(Aggregator<? super V, A> aggregator) {
+            return aggregator.lift(value);
+        }
+    }
+
+    private static class Box<V, A> extends Node<V, A> {
+        private final double x, y, len;
+        /**
+         * Sub sectors, indexed by ordinal of {@link SubSectorType}
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final Node<V, A>[] children = new Node[4];
+        private A aggregate;
+
+        Box(double x, double y, double len) {
+            this.x = x;
+            this.y = y;
+            this.len = len;
+        }
+
+        @Override
+        double getX() {
+            return x;
+        }
+
+        @Override
+        double getY() {
+            return y;
+        }
+
+        @Override
+        A getAggregate(Aggregator<? super V, A> aggregator) {
+            return aggregate;
+        }
+
+        SubSectorType determineType(Point2d point) {
+            return BoxSector.determineType(point, x, y, len);
+        }
+
+        void attach(Node<V, A> node) {
+            SubSectorType type = BoxSector.determineType(node.getX(), node.getY(), x, y, len);
+            children[type.ordinal()] = node;
+            node.parent = this;
+        }
+
+        A computeAggregate(Aggregator<? super V, A> aggregator) {
+            A result = aggregator.identity();
+            for (Node<V, A> child : children) {
+                if (child != null) {
+                    result = aggregator.combine(result, child.getAggregate(aggregator));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import lombok.Getter;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Metrics of quad tree, created by {@link InstrumentedQuadTree}.
+ * Counters are thread-safe and cheap to update. Structure of tree (layers, boxes, depths) isn't tracked,
+ * it's computed by traversal of tree, when asked, so it shouldn't be asked while tree is being changed,
+ * unless tree itself is thread-safe
+ */
+public class QuadTreeMetrics implements QuadTreeMetricsMXBean {
+    private static final int HISTOGRAM_SIZE = Long.SIZE;
+
+    public enum Operation {
+        CONTAINS, ADD, REMOVE, ADD_ALL, REMOVE_ALL, CONTAINS_ALL, RANGE_QUERY, RANGE_COUNT
+    }
+
+    /**
+     * Roots of layers, the lowest first
+     */
+    private final Supplier<List<? extends Sector>> layers;
+    private volatile boolean enabled = true;
+    private final LongAdder predecessorSearches = new LongAdder();
+    private final LongAdder predecessorCells = new LongAdder();
+    private final LongAdder coinHeads = new LongAdder();
+    private final LongAdder coinTails = new LongAdder();
+    private final LongAdder[] latencySums = new LongAdder[Operation.values().length];
+    private final AtomicLongArray latencyHistograms = new AtomicLongArray(Operation.values().length * HISTOGRAM_SIZE);
+    private ObjectName objectName;
+
+    QuadTreeMetrics(Supplier<List<? extends Sector>> layers) {
+        this.layers = layers;
+        for (int i = 0; i < latencySums.length; ++i) {
+            latencySums[i] = new LongAdder();
+        }
+    }
+
+    static QuadTreeMetrics of(QuadTree quadTree) {
+        if (quadTree instanceof SkipQuadTree) {
+            SkipQuadTree skipQuadTree = (SkipQuadTree) quadTree;
+            QuadTreeMetrics metrics = new QuadTreeMetrics(() -> skipQuadTree.layers);
+            skipQuadTree.setMetrics(metrics);
+            return metrics;
+        }
+        if (quadTree instanceof CompressedQuadTree) {
+            CompressedQuadTree compressedQuadTree = (CompressedQuadTree) quadTree;
+            return new QuadTreeMetrics(() -> {
+                Sector root = compressedQuadTree.root;
+                return root == null ? Collections.emptyList() : Collections.singletonList(root);
+            });
+        }
+        return new QuadTreeMetrics(Collections::emptyList);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void recordLatency(Operation operation, long nanos) {
+        int bucket = nanos <= 0 ? 0 : Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        latencyHistograms.incrementAndGet(operation.ordinal() * HISTOGRAM_SIZE + bucket);
+        latencySums[operation.ordinal()].add(nanos);
+    }
+
+    /**
+     * Records search of the lowest predecessor, which started at box start and ended at box pred
+     * (which is start itself or it's descendant)
+     */
+    void recordPredecessorSearch(BoxSector start, BoxSector pred) {
+        if (!enabled) {
+            return;
+        }
+        int cells = 1;
+        for (BoxSector box = pred; box != start; box = box.getParent()) {
+            cells++;
+        }
+        predecessorSearches.increment();
+        predecessorCells.add(cells);
+    }
+
+    void recordCoin(boolean heads) {
+        if (enabled) {
+            (heads ? coinHeads : coinTails).increment();
+        }
+    }
+
+    @Override
+    public int getLayerCount() {
+        return layers.get().size();
+    }
+
+    @Override
+    public int[] getPointsPerLayer() {
+        return collectStructure().pointsPerLayer;
+    }
+
+    @Override
+    public int getBoxCount() {
+        return collectStructure().boxCount;
+    }
+
+    @Override
+    public int[] getDepthHistogram() {
+        return collectStructure().trimmedDepthHistogram();
+    }
+
+    @Override
+    public long getPredecessorSearches() {
+        return predecessorSearches.sum();
+    }
+
+    @Override
+    public double getAveragePredecessorCells() {
+        long searches = predecessorSearches.sum();
+        return searches == 0 ? 0 : (double) predecessorCells.sum() / searches;
+    }
+
+    @Override
+    public long getCoinHeads() {
+        return coinHeads.sum();
+    }
+
+    @Override
+    public long getCoinTails() {
+        return coinTails.sum();
+    }
+
+    public long getOperationCount(Operation operation) {
+        long count = 0;
+        for (int i = 0; i < HISTOGRAM_SIZE; ++i) {
+            count += latencyHistograms.get(operation.ordinal() * HISTOGRAM_SIZE + i);
+        }
+        return count;
+    }
+
+    public double getMeanLatency(Operation operation) {
+        long count = getOperationCount(operation);
+        return count == 0 ? 0 : (double) latencySums[operation.ordinal()].sum() / count;
+    }
+
+    public long[] getLatencyHistogram(Operation operation) {
+        long[] histogram = new long[HISTOGRAM_SIZE];
+        for (int i = 0; i < HISTOGRAM_SIZE; ++i) {
+            histogram[i] = latencyHistograms.get(operation.ordinal() * HISTOGRAM_SIZE + i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Operation operation : Operation.values()) {
+            result.put(operation.name(), getOperationCount(operation));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencies() {
+        Map<String, Double> result = new TreeMap<>();
+        for (Operation operation : Operation.values()) {
+            result.put(operation.name(), getMeanLatency(operation));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, long[]> getLatencyHistograms() {
+        Map<String, long[]> result = new TreeMap<>();
+        for (Operation operation : Operation.values()) {
+            result.put(operation.name(), getLatencyHistogram(operation));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        predecessorSearches.reset();
+        predecessorCells.reset();
+        coinHeads.reset();
+        coinTails.reset();
+        for (LongAdder sum : latencySums) {
+            sum.reset();
+        }
+        for (int i = 0; i < latencyHistograms.length(); ++i) {
+            latencyHistograms.set(i, 0);
+        }
+    }
+
+    /**
+     * Takes all metrics at once, traversing tree only one time
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this, collectStructure());
+    }
+
+    /**
+     * Registers metrics in platform MBean server under name
+     * ru.georgeee.itmo.sem5.cg.quadtree:type=QuadTreeMetrics,name=&lt;name&gt;
+     */
+    public synchronized ObjectName register(String name) {
+        if (objectName != null) {
+            throw new IllegalStateException("Metrics are already registered as " + objectName);
+        }
+        try {
+            ObjectName objectName = new ObjectName(getClass().getPackage().getName() + ":type=QuadTreeMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register metrics " + name, e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to unregister metrics " + objectName, e);
+        }
+        objectName = null;
+    }
+
+    private Structure collectStructure() {
+        List<? extends Sector> roots = layers.get();
+        Structure structure = new Structure(roots.size());
+        Deque<Sector> stack = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        for (int i = 0; i < roots.size(); ++i) {
+            Sector root = roots.get(i);
+            structure.pointsPerLayer[i] = root.getSize();
+            stack.push(root);
+            depths.push(0);
+            while (!stack.isEmpty()) {
+                Sector sector = stack.pop();
+                int depth = depths.pop();
+                if (sector instanceof BoxSector) {
+                    structure.boxCount++;
+                    for (SubSectorType type : SubSectorType.values()) {
+                        Sector subSector = ((BoxSector) sector).getSubSector(type);
+                        if (subSector != null) {
+                            stack.push(subSector);
+                            depths.push(depth + 1);
+                        }
+                    }
+                } else if (i == 0 && sector.getSize() > 0) {
+                    structure.addDepth(depth);
+                }
+            }
+        }
+        return structure;
+    }
+
+    private static class Structure {
+        private final int[] pointsPerLayer;
+        private int boxCount;
+        /**
+         * Number of points of the lowest layer by number of boxes above them
+         */
+        private int[] depthHistogram = new int[0];
+
+        Structure(int layerCount) {
+            pointsPerLayer = new int[layerCount];
+        }
+
+        void addDepth(int depth) {
+            if (depth >= depthHistogram.length) {
+                depthHistogram = Arrays.copyOf(depthHistogram, Math.max(depth + 1, 2 * depthHistogram.length));
+            }
+            depthHistogram[depth]++;
+        }
+
+        int[] trimmedDepthHistogram() {
+            int length = depthHistogram.length;
+            while (length > 0 && depthHistogram[length - 1] == 0) {
+                length--;
+            }
+            return Arrays.copyOf(depthHistogram, length);
+        }
+    }
+
+    /**
+     * Values of all metrics at some moment
+     */
+    @Getter
+    public static class Snapshot {
+        private final int layerCount;
+        private final int[] pointsPerLayer;
+        private final int boxCount;
+        private final int[] depthHistogram;
+        private final long predecessorSearches;
+        private final double averagePredecessorCells;
+        private final long coinHeads;
+        private final long coinTails;
+        private final Map<Operation, Long> operationCounts = new EnumMap<>(Operation.class);
+        private final Map<Operation, Double> meanLatencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, long[]> latencyHistograms = new EnumMap<>(Operation.class);
+
+        private Snapshot(QuadTreeMetrics metrics, Structure structure) {
+            layerCount = structure.pointsPerLayer.length;
+            pointsPerLayer = structure.pointsPerLayer;
+            boxCount = structure.boxCount;
+            depthHistogram = structure.trimmedDepthHistogram();
+            predecessorSearches = metrics.getPredecessorSearches();
+            averagePredecessorCells = metrics.getAveragePredecessorCells();
+            coinHeads = metrics.getCoinHeads();
+            coinTails = metrics.getCoinTails();
+            for (Operation operation : Operation.values()) {
+                operationCounts.put(operation, metrics.getOperationCount(operation));
+                meanLatencies.put(operation, metrics.getMeanLatency(operation));
+                latencyHistograms.put(operation, metrics.getLatencyHistogram(operation));
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link QuadTreeMetrics}. Latencies are in nanoseconds, histogram bucket i counts
+ * operations, which took [2^i; 2^(i+1)) ns (bucket 0 also counts operations, which took 0 ns)
+ */
+public interface QuadTreeMetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    int getLayerCount();
+
+    int[] getPointsPerLayer();
+
+    int getBoxCount();
+
+    int[] getDepthHistogram();
+
+    long getPredecessorSearches();
+
+    double getAveragePredecessorCells();
+
+    long getCoinHeads();
+
+    long getCoinTails();
+
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Double> getMeanLatencies();
+
+    Map<String, long[]> getLatencyHistograms();
+
+    void reset();
+}
@@ -0,0 +1,100 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read operations of quad tree. Read only states of trees (e.g. {@link CompressedQuadTree#snapshot()}) provide only them
+ */
+public interface QuadTreeView extends Iterable<Point2d> {
+    boolean contains(Point2d point);
+
+    default boolean containsAll(Collection<Point2d> points) {
+        for (Point2d point : points) {
+            if (!contains(point)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes to consumer every point p of tree, such that
+     * topLeft.x &lt;= p.x &lt;= bottomRight.x and topLeft.y &lt;= p.y &lt;= bottomRight.y
+     */
+    void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer);
+
+    /**
+     * Counts points, that would be reported by {@link #rangeQuery(Point2d, Point2d, Consumer)}
+     */
+    int rangeCount(Point2d topLeft, Point2d bottomRight);
+
+    /**
+     * Finds k points of tree, closest to the given one (or all points, if tree contains less than k).
+     * Default implementation doubles square window around point, until it contains k points (or covers the unit square),
+     * then k-th closest point is within distance r * sqrt(2) (r is half-side of window), so only points
+     * within window of half-side r * sqrt(2) are sorted by distance. Trees override it to traverse their sectors in order of distance
+     *
+     * @return points, sorted by increasing distance
+     */
+    default List<Point2d> nearest(Point2d point, int k) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        double x = point.getX(), y = point.getY();
+        //Window is started from cell of depth 20, so there are at most 20 doublings till it covers the unit square
+        double r = Math.scalb(1.0, -20);
+        while ((x - r > 0 || y - r > 0 || x + r < 1 || y + r < 1)
+                && rangeCount(new Point2d(x - r, y - r), new Point2d(x + r, y + r)) < k) {
+            r *= 2;
+        }
+        r = Math.nextUp(r * Math.sqrt(2));
+        List<Point2d> candidates = new ArrayList<>();
+        rangeQuery(new Point2d(x - r, y - r), new Point2d(x + r, y + r), candidates::add);
+        candidates.sort(Comparator.comparingDouble(point::distanceSq));
+        return candidates.size() > k ? new ArrayList<>(candidates.subList(0, k)) : candidates;
+    }
+
+    /**
+     * Iterates over points of tree in Z-order (see {@link MortonOrder})
+     */
+    @Override
+    default Iterator<Point2d> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    default Spliterator<Point2d> spliterator() {
+        return rangeSpliterator(new Point2d(0, 0), new Point2d(1, 1));
+    }
+
+    /**
+     * Returns spliterator over points, that would be reported by {@link #rangeQuery(Point2d, Point2d, Consumer)}, in Z-order.
+     * Default implementation copies points of range query and sorts them, trees override it to traverse their sectors
+     */
+    default Spliterator<Point2d> rangeSpliterator(Point2d topLeft, Point2d bottomRight) {
+        List<Point2d> points = new ArrayList<>();
+        rangeQuery(topLeft, bottomRight, points::add);
+        points.sort(MortonOrder.COMPARATOR);
+        return Spliterators.spliterator(points, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    default Stream<Point2d> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    default Stream<Point2d> rangeStream(Point2d topLeft, Point2d bottomRight) {
+        return StreamSupport.stream(rangeSpliterator(topLeft, bottomRight), false);
+    }
+}
@@ -2,6 +2,8 @@ package ru.georgeee.itmo.sem5.cg.quadtree;
 
 import ru.georgeee.itmo.sem5.cg.common.Point2d;
 
+import java.util.function.Consumer;
+
 interface Sector {
     Point2d getTopLeft();
 
@@ -9,9 +11,28 @@ interface Sector {
 
     void setParent(BoxSector s);
 
+    /**
+     * Version of tree, in which sector was created (see {@link CompressedQuadTree#snapshot()}).
+     * Sectors of previous epochs may be shared with snapshots, so they're never changed
+     */
+    int getEpoch();
+
+    /**
+     * @return number of points (not counting sentinels) within sector
+     */
+    int getSize();
+
     boolean contains(Point2d point);
 
-    BoxSector add(Point2d pointSector);
+    /**
+     * Passes every point of sector to consumer
+     */
+    void forEachPoint(Consumer<Point2d> consumer);
+
+    /**
+     * Passes to consumer every point of sector, lying within rectangle [x1; x2] x [y1; y2]
+     */
+    void rangeQuery(double x1, double y1, double x2, double y2, Consumer<Point2d> consumer);
 
-    Sector remove(Point2d point);
+    int rangeCount(double x1, double y1, double x2, double y2);
 }
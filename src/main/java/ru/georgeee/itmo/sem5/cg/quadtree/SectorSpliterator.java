@@ -0,0 +1,117 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over points of sectors, lying within rectangle [x1; x2] x [y1; y2], in Z-order.
+ * Sectors to be visited are kept on explicit stack (the next one on the top), box on the top is replaced with it's sub sectors.
+ * Split takes sectors from the top of the stack, while they contain no more than half of remaining points,
+ * box, which doesn't fit, is replaced with it's sub sectors, so tree is divided evenly at quadrant boundaries.
+ * Tree shouldn't be modified while spliterator is in use
+ */
+class SectorSpliterator implements Spliterator<Point2d> {
+    private static final SubSectorType[] REVERSED_Z_ORDER = {SubSectorType.SE, SubSectorType.SW, SubSectorType.NE, SubSectorType.NW};
+
+    private final Deque<Sector> stack;
+    private final double x1, y1, x2, y2;
+    /**
+     * Rectangle covers the unit square, so every point is reported and sizes of sectors are exact
+     */
+    private final boolean whole;
+
+    /**
+     * @param sectors sectors in Z-order (nulls are skipped)
+     */
+    SectorSpliterator(double x1, double y1, double x2, double y2, Sector... sectors) {
+        this(new ArrayDeque<>(), x1, y1, x2, y2);
+        for (Sector sector : sectors) {
+            if (sector != null) {
+                stack.addLast(sector);
+            }
+        }
+    }
+
+    private SectorSpliterator(Deque<Sector> stack, double x1, double y1, double x2, double y2) {
+        this.stack = stack;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+        this.whole = x1 <= 0 && y1 <= 0 && x2 >= 1 && y2 >= 1;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Point2d> action) {
+        while (!stack.isEmpty()) {
+            Sector sector = stack.pop();
+            if (sector instanceof PointSector) {
+                PointSector pointSector = (PointSector) sector;
+                if (!pointSector.isSentinel() && PointSector.isWithin(pointSector.getPoint(), x1, y1, x2, y2)) {
+                    action.accept(pointSector.getPoint());
+                    return true;
+                }
+            } else {
+                expand((BoxSector) sector);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pushes sub sectors of box, so that they are popped in Z-order
+     */
+    private void expand(BoxSector boxSector) {
+        if (boxSector.isDisjoint(x1, y1, x2, y2)) {
+            return;
+        }
+        for (SubSectorType type : REVERSED_Z_ORDER) {
+            Sector subSector = boxSector.getSubSector(type);
+            if (subSector != null) {
+                stack.push(subSector);
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<Point2d> trySplit() {
+        long half = estimateSize() / 2;
+        Deque<Sector> prefix = new ArrayDeque<>();
+        long size = 0;
+        while (!stack.isEmpty()) {
+            Sector sector = stack.peek();
+            if (size + sector.getSize() <= half) {
+                prefix.addLast(stack.pop());
+                size += sector.getSize();
+            } else if (sector instanceof BoxSector && size < half) {
+                expand((BoxSector) stack.pop());
+            } else {
+                break;
+            }
+        }
+        if (stack.isEmpty()) {
+            while (!prefix.isEmpty()) {
+                stack.push(prefix.pollLast());
+            }
+        }
+        return prefix.isEmpty() ? null : new SectorSpliterator(prefix, x1, y1, x2, y2);
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for (Sector sector : stack) {
+            size += sector.getSize();
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL | (whole ? SIZED | SUBSIZED : 0);
+    }
+}
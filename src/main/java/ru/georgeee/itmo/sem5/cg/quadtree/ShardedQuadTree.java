@@ -0,0 +1,362 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe quad tree, splitting unit square into 4^depth dyadic cells (shards).
+ * Each shard is an independent quad tree, guarded by it's own read-write lock,
+ * so writers to different shards don't block each other.
+ * Reads of shard (contains, range and nearest queries) are done under read lock, so several of them may run at once:
+ * shard trees should support concurrent reads, i.e. reads shouldn't modify the tree
+ * (this holds for {@link CompressedQuadTree}, {@link SkipQuadTree} and {@link LinearQuadTree}).
+ * Range and nearest queries visit only shards, intersecting with the query, one by one,
+ * so they are not atomic with respect to writes
+ */
+public class ShardedQuadTree implements QuadTree {
+    /**
+     * Max depth, for which shard indices fit into int
+     */
+    private static final int MAX_DEPTH = 15;
+
+    private final int depth;
+    private final int side;
+    private final QuadTree[] shards;
+    private final ReentrantReadWriteLock[] locks;
+
+    /**
+     * @param depth          shards are cells of this depth
+     * @param precision      precision of shard trees: equal points should always get to the same shard,
+     *                       so shard side shouldn't be less than precision
+     * @param shardSupplier  creates empty tree for shard, which reads may run concurrently
+     */
+    public ShardedQuadTree(int depth, double precision, Supplier<? extends QuadTree> shardSupplier) {
+        if (depth < 0 || depth > MAX_DEPTH || Math.scalb(1.0, -depth) < precision) {
+            throw new IllegalArgumentException(String.format("Illegal shard depth %d for precision %s", depth, precision));
+        }
+        this.depth = depth;
+        this.side = 1 << depth;
+        this.shards = new QuadTree[side * side];
+        this.locks = new ReentrantReadWriteLock[side * side];
+        for (int i = 0; i < shards.length; ++i) {
+            shards[i] = shardSupplier.get();
+            locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private int cellIndex(double c) {
+        int index = (int) Math.floor(Math.scalb(c, depth));
+        return Math.max(0, Math.min(side - 1, index));
+    }
+
+    private int shardIndex(Point2d point) {
+        return cellIndex(point.getY()) * side + cellIndex(point.getX());
+    }
+
+    /**
+     * Takes even bits of value, i.e. row (for odd bits) or column of cell with given Z-order index
+     */
+    private static int evenBits(int z) {
+        int result = 0;
+        for (int i = 0; i < MAX_DEPTH; ++i) {
+            result |= ((z >>> (2 * i)) & 1) << i;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean contains(Point2d point) {
+        int index = shardIndex(point);
+        Lock lock = locks[index].readLock();
+        lock.lock();
+        try {
+            return shards[index].contains(point);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean add(Point2d point) {
+        int index = shardIndex(point);
+        Lock lock = locks[index].writeLock();
+        lock.lock();
+        try {
+            return shards[index].add(point);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Point2d point) {
+        int index = shardIndex(point);
+        Lock lock = locks[index].writeLock();
+        lock.lock();
+        try {
+            return shards[index].remove(point);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        if (topLeft.getX() > bottomRight.getX() || topLeft.getY() > bottomRight.getY()) {
+            return;
+        }
+        int fromX = cellIndex(topLeft.getX()), toX = cellIndex(bottomRight.getX());
+        int fromY = cellIndex(topLeft.getY()), toY = cellIndex(bottomRight.getY());
+        for (int i = fromY; i <= toY; ++i) {
+            for (int j = fromX; j <= toX; ++j) {
+                int index = i * side + j;
+                Lock lock = locks[index].readLock();
+                lock.lock();
+                try {
+                    shards[index].rangeQuery(topLeft, bottomRight, consumer);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        if (topLeft.getX() > bottomRight.getX() || topLeft.getY() > bottomRight.getY()) {
+            return 0;
+        }
+        int fromX = cellIndex(topLeft.getX()), toX = cellIndex(bottomRight.getX());
+        int fromY = cellIndex(topLeft.getY()), toY = cellIndex(bottomRight.getY());
+        int counter = 0;
+        for (int i = fromY; i <= toY; ++i) {
+            for (int j = fromX; j <= toX; ++j) {
+                int index = i * side + j;
+                Lock lock = locks[index].readLock();
+                lock.lock();
+                try {
+                    counter += shards[index].rangeCount(topLeft, bottomRight);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Concatenates range spliterators of shards, intersecting with rectangle, in Z-order of their cells.
+     * Points with coordinate 1 go in Z-order after all points with smaller coordinate (see {@link MortonOrder}),
+     * so their parts of shards of the last column and row are visited after the rest of the unit square.
+     * Shard is read under it's read lock, when spliterator gets to it, so traversal isn't atomic with respect to writes.
+     * If rectangle covers the unit square, shard sizes, counted when it's created, are reported by estimateSize,
+     * but spliterator isn't SIZED: shards may be changed by other threads before they are read
+     */
+    @Override
+    public Spliterator<Point2d> rangeSpliterator(Point2d topLeft, Point2d bottomRight) {
+        double x1 = topLeft.getX(), y1 = topLeft.getY(), x2 = bottomRight.getX(), y2 = bottomRight.getY();
+        double inner = Math.nextDown(1.0);
+        List<ShardRange> ranges = new ArrayList<>();
+        addRanges(ranges, x1, y1, Math.min(x2, inner), Math.min(y2, inner));
+        addRanges(ranges, Math.max(x1, 1), y1, x2, Math.min(y2, inner));
+        addRanges(ranges, x1, Math.max(y1, 1), Math.min(x2, inner), y2);
+        addRanges(ranges, Math.max(x1, 1), Math.max(y1, 1), x2, y2);
+        boolean whole = x1 <= 0 && y1 <= 0 && x2 >= 1 && y2 >= 1;
+        long[] sizes = null;
+        if (whole) {
+            sizes = new long[ranges.size()];
+            for (int i = 0; i < sizes.length; ++i) {
+                sizes[i] = ranges.get(i).count();
+            }
+        }
+        return new ShardSpliterator(ranges, sizes, 0, ranges.size(), null);
+    }
+
+    /**
+     * Adds parts of shards, intersecting with rectangle, in Z-order of their cells
+     */
+    private void addRanges(List<ShardRange> ranges, double x1, double y1, double x2, double y2) {
+        if (x1 > x2 || y1 > y2) {
+            return;
+        }
+        int fromX = cellIndex(x1), toX = cellIndex(x2);
+        int fromY = cellIndex(y1), toY = cellIndex(y2);
+        Point2d topLeft = new Point2d(x1, y1), bottomRight = new Point2d(x2, y2);
+        for (int z = 0; z < shards.length; ++z) {
+            int i = evenBits(z >>> 1), j = evenBits(z);
+            if (fromY <= i && i <= toY && fromX <= j && j <= toX) {
+                ranges.add(new ShardRange(i * side + j, topLeft, bottomRight));
+            }
+        }
+    }
+
+    /**
+     * Finds k points, closest to given one, in order of increasing distance.
+     * Shards are visited in order of increasing distance to their cells, until cell is farther than k-th candidate.
+     * Each shard is searched by it's own {@link QuadTree#nearest(Point2d, int)}
+     */
+    @Override
+    public List<Point2d> nearest(Point2d point, int k) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        Integer[] order = new Integer[shards.length];
+        double[] distances = new double[shards.length];
+        double len = Math.scalb(1.0, -depth);
+        for (int i = 0; i < shards.length; ++i) {
+            order[i] = i;
+            double dx = distanceToSegment(point.getX(), (i % side) * len, len);
+            double dy = distanceToSegment(point.getY(), (i / side) * len, len);
+            distances[i] = dx * dx + dy * dy;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> distances[i]));
+        Comparator<Point2d> byDistance = Comparator.comparingDouble(point::distanceSq);
+        PriorityQueue<Point2d> best = new PriorityQueue<>(k, byDistance.reversed());
+        for (int index : order) {
+            if (best.size() == k && distances[index] > point.distanceSq(best.peek())) {
+                break;
+            }
+            Lock lock = locks[index].readLock();
+            lock.lock();
+            try {
+                for (Point2d candidate : shards[index].nearest(point, k)) {
+                    if (best.size() < k) {
+                        best.add(candidate);
+                    } else if (point.distanceSq(candidate) < point.distanceSq(best.peek())) {
+                        best.poll();
+                        best.add(candidate);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        List<Point2d> result = new ArrayList<>(best);
+        result.sort(byDistance);
+        return result;
+    }
+
+    private static double distanceToSegment(double c, double from, double len) {
+        if (c < from) {
+            return from - c;
+        }
+        return c > from + len ? c - from - len : 0;
+    }
+
+    /**
+     * Part of shard within rectangle
+     */
+    private class ShardRange {
+        private final int index;
+        private final Point2d topLeft, bottomRight;
+
+        ShardRange(int index, Point2d topLeft, Point2d bottomRight) {
+            this.index = index;
+            this.topLeft = topLeft;
+            this.bottomRight = bottomRight;
+        }
+
+        long count() {
+            Lock lock = locks[index].readLock();
+            lock.lock();
+            try {
+                return shards[index].rangeCount(topLeft, bottomRight);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Drains spliterator of shard under it's read lock, so that shard may be changed after that
+         */
+        Spliterator<Point2d> read() {
+            List<Point2d> points = new ArrayList<>();
+            Lock lock = locks[index].readLock();
+            lock.lock();
+            try {
+                shards[index].rangeSpliterator(topLeft, bottomRight).forEachRemaining(points::add);
+            } finally {
+                lock.unlock();
+            }
+            return points.spliterator();
+        }
+    }
+
+    /**
+     * Spliterator over shard ranges [from; to), preceded by points of the current (already read) range.
+     * Split divides ranges in half, the last range is split by it's own spliterator
+     */
+    private static class ShardSpliterator implements Spliterator<Point2d> {
+        private final List<ShardRange> ranges;
+        /**
+         * Sizes of ranges, counted on creation, or null, if they are unknown
+         */
+        private final long[] sizes;
+        private int from;
+        private final int to;
+        private Spliterator<Point2d> current;
+
+        ShardSpliterator(List<ShardRange> ranges, long[] sizes, int from, int to, Spliterator<Point2d> current) {
+            this.ranges = ranges;
+            this.sizes = sizes;
+            this.from = from;
+            this.to = to;
+            this.current = current;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Point2d> action) {
+            while (current == null || !current.tryAdvance(action)) {
+                if (from == to) {
+                    current = null;
+                    return false;
+                }
+                current = ranges.get(from++).read();
+            }
+            return true;
+        }
+
+        @Override
+        public Spliterator<Point2d> trySplit() {
+            if (from < to && (current != null || to - from >= 2)) {
+                int mid = current != null ? from + (to - from) / 2 : (from + to) >>> 1;
+                ShardSpliterator prefix = new ShardSpliterator(ranges, sizes, from, mid, current);
+                from = mid;
+                current = null;
+                return prefix;
+            }
+            if (current == null && from < to) {
+                current = ranges.get(from++).read();
+            }
+            return current == null ? null : current.trySplit();
+        }
+
+        @Override
+        public long estimateSize() {
+            if (sizes == null) {
+                return Long.MAX_VALUE;
+            }
+            long size = current == null ? 0 : current.estimateSize();
+            for (int i = from; i < to; ++i) {
+                size += sizes[i];
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL;
+        }
+    }
+}
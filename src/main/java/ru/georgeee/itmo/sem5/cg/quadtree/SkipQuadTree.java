@@ -1,25 +1,50 @@
 package ru.georgeee.itmo.sem5.cg.quadtree;
 
+import lombok.AccessLevel;
+import lombok.Setter;
 import ru.georgeee.itmo.sem5.cg.common.Point2d;
 import ru.georgeee.itmo.sem5.cg.common.Utils;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 public class SkipQuadTree implements QuadTree {
     private final Coin coin;
     private final double precision;
 
-    private static final double CLOSEST_TO_ONE = Double.longBitsToDouble(0x3fefffffffffffffL); //0.9999...
-    private static final Point2d ZERO_POINT = new Point2d(0, 0);
-    private static final Point2d ONE_POINT = new Point2d(CLOSEST_TO_ONE, CLOSEST_TO_ONE);
+    static final double CLOSEST_TO_ONE = Double.longBitsToDouble(0x3fefffffffffffffL); //0.9999...
+    static final Point2d ZERO_POINT = new Point2d(0, 0);
+    static final Point2d ONE_POINT = new Point2d(CLOSEST_TO_ONE, CLOSEST_TO_ONE);
 
 
-    private boolean containsZero, containsOne;
+    /**
+     * Points, equal to corners of layer's square (which are kept in each layer as sentinels)
+     */
+    private Point2d zeroPoint, onePoint;
 
     final List<BoxSector> layers = new ArrayList<>();
+    /**
+     * Number of removals, done in layers: removal may detach boxes, kept by cursors
+     */
+    private int modCount;
+    /**
+     * Predecessor chain, reused by add and remove to avoid allocation.
+     * Read operations don't touch it, so they may run concurrently (e.g. under read lock of {@link ShardedQuadTree})
+     */
+    private BoxSector[] predChain;
+    /**
+     * Metrics of predecessor searches and coin flips, or null if they aren't collected
+     */
+    @Setter(AccessLevel.PACKAGE)
+    private QuadTreeMetrics metrics;
 
     public SkipQuadTree() {
         this(null, 0);
@@ -34,6 +59,54 @@ public class SkipQuadTree implements QuadTree {
         this.precision = precision;
     }
 
+    /**
+     * Builds tree from points at once on common fork/join pool
+     *
+     * @see #SkipQuadTree(Collection, Coin, double, ForkJoinPool)
+     */
+    public SkipQuadTree(Collection<Point2d> points, Coin coin, double precision) {
+        this(points, coin, precision, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds tree from points at once on fork/join pool: points are sorted in Z-order, then coin is flipped
+     * to get height of each point's tower (sequentially, as coin may be not thread-safe),
+     * then every layer is built independently and boxes of adjacent layers are linked
+     * (see {@link ParallelQuadTreeBuilder}). Of points, equal to each other, the first one in collection is kept
+     */
+    public SkipQuadTree(Collection<Point2d> points, Coin coin, double precision, ForkJoinPool pool) {
+        this(coin, precision);
+        List<Point2d> rest = new ArrayList<>(points.size());
+        for (Point2d point : points) {
+            if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
+                if (zeroPoint == null) {
+                    zeroPoint = point;
+                }
+            } else if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
+                if (onePoint == null) {
+                    onePoint = point;
+                }
+            } else {
+                rest.add(point);
+            }
+        }
+        Point2d[] array = rest.toArray(new Point2d[rest.size()]);
+        int[] order = ParallelQuadTreeBuilder.sortedDistinct(array, precision, pool);
+        Point2d[] sorted = new Point2d[order.length];
+        int[] heights = new int[order.length];
+        int layerCount = 0;
+        for (int i = 0; i < order.length; ++i) {
+            sorted[i] = array[order[i]];
+            int height = 1;
+            while (this.coin.decide(height, sorted[i])) {
+                height++;
+            }
+            heights[i] = height;
+            layerCount = Math.max(layerCount, height);
+        }
+        layers.addAll(Arrays.asList(ParallelQuadTreeBuilder.buildLayers(sorted, heights, layerCount, precision, pool)));
+    }
+
     private static Coin createRandomCoin() {
         Random random = Utils.createRandom();
         return (i, p) -> random.nextBoolean();
@@ -42,102 +115,395 @@ public class SkipQuadTree implements QuadTree {
     @Override
     public boolean contains(Point2d point) {
         if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
-            return containsZero;
+            return zeroPoint != null;
         }
         if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
-            return containsOne;
+            return onePoint != null;
         }
         if (layers.isEmpty()) return false;
-        List<BoxSector> predChain = getPredecessorChain(point);
-        return predChain.get(0).contains(point);
+        return findBottomPredecessor(point).contains(point);
     }
 
     @Override
     public boolean add(Point2d point) {
         if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
-            boolean contained = containsZero;
-            containsZero = true;
+            boolean contained = zeroPoint != null;
+            if (!contained) {
+                zeroPoint = point;
+            }
             return !contained;
         }
         if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
-            boolean contained = containsOne;
-            containsOne = true;
+            boolean contained = onePoint != null;
+            if (!contained) {
+                onePoint = point;
+            }
             return !contained;
         }
-        List<BoxSector> predChain = getPredecessorChain(point);
-        int i = 0;
-        try {
-            for (i = 0; i < layers.size(); ++i) {
-                if (i > 0 && !coin.decide(i, point)) break;
-                BoxSector pred = predChain.get(i);
-                if (pred == null) {
-                    //Cause every layer is [0;0]-[1;1] square, we can be sure, layer's head remain invariable
-                    layers.get(i).add(point);
-                } else {
-                    BoxSector pred2 = pred.add(point);
-                    if (pred2 != pred) {
-                        throw new IllegalStateException("Predecessor shouldn't change when adding: " + pred + " != " + pred2);
-                    }
+        return add(point, getPredecessorChain(point));
+    }
+
+    /**
+     * Adds point, not equal to sentinels
+     *
+     * @param predChain boxes, containing point, one per layer (entries are replaced with lowest predecessors)
+     */
+    private boolean add(Point2d point, BoxSector[] predChain) {
+        int i;
+        for (i = 0; i < layers.size(); ++i) {
+            if (i > 0 && !flip(i, point)) break;
+            BoxSector pred = findLowestPredecessor(predChain[i], point);
+            predChain[i] = pred;
+            if (!pred.add(point)) {
+                if (i == 0) {
+                    return false;
                 }
+                throw new IllegalStateException("Point exists in upper layer, being absent at lower: " + point);
             }
-            if (i == layers.size()) {
-                for (i = layers.size(); i == 0 || coin.decide(i, point); ++i) {
-                    BoxSector boxSector = new BoxSector(ZERO_POINT, ONE_POINT, precision);
-                    if (i > 0) {
-                        boxSector.setLink(layers.get(i - 1));
-                    }
-                    boxSector.add(point);
-                    layers.add(boxSector);
+        }
+        if (i == layers.size()) {
+            for (i = layers.size(); i == 0 || flip(i, point); ++i) {
+                BoxSector boxSector = createLayer();
+                if (i > 0) {
+                    boxSector.setLink(layers.get(i - 1));
                 }
+                boxSector.add(point);
+                layers.add(boxSector);
             }
-        } catch (PointAlreadyExistsException e) {
+        }
+        return true;
+    }
+
+    private boolean flip(int layer, Point2d point) {
+        boolean heads = coin.decide(layer, point);
+        if (metrics != null) {
+            metrics.recordCoin(heads);
+        }
+        return heads;
+    }
+
+    private BoxSector findLowestPredecessor(BoxSector start, Point2d point) {
+        BoxSector pred = start.findLowestPredecessor(point);
+        if (metrics != null && pred != null) {
+            metrics.recordPredecessorSearch(start, pred);
+        }
+        return pred;
+    }
+
+    private BoxSector createLayer() {
+        return new BoxSector(new PointSector(ZERO_POINT, precision, true), new PointSector(ONE_POINT, precision, true), precision);
+    }
+
+    /**
+     * Finds the lowest predecessor of point in the lowest layer, descending from the top layer by links.
+     * Unlike {@link #getPredecessorChain(Point2d)}, it doesn't modify the tree
+     */
+    private BoxSector findBottomPredecessor(Point2d point) {
+        BoxSector start = layers.get(layers.size() - 1);
+        for (int i = layers.size() - 1; ; --i) {
+            BoxSector pred = findLowestPredecessor(start, point);
             if (i == 0) {
-                return false;
-            } else {
-                throw new IllegalStateException("Point exists in upper layer, being absent at lower", e);
+                return pred;
             }
+            start = pred.getLink() != null ? pred.getLink() : layers.get(i - 1);
         }
-        return true;
     }
 
-    private List<BoxSector> getPredecessorChain(Point2d point) {
-        List<BoxSector> predChain = new ArrayList<>(layers.size());
-        BoxSector lastLink = null;
-        for (int i = layers.size() - 1; i >= 0; --i) {
-            if (lastLink == null) {
-                lastLink = layers.get(i);
-                assert i == layers.size() - 1;
+    /**
+     * Finds the lowest predecessors of point in every layer (indexed by layer), descending from the top layer.
+     * Returned array is reused by subsequent calls, so it's used only by modifying operations
+     */
+    private BoxSector[] getPredecessorChain(Point2d point) {
+        if (predChain == null || predChain.length != layers.size()) {
+            predChain = new BoxSector[layers.size()];
+        }
+        for (int i = 0; i < predChain.length; ++i) {
+            predChain[i] = layers.get(i);
+        }
+        return updatePredecessorChain(predChain, point);
+    }
+
+    /**
+     * Moves predecessor chain of previous point to the given one.
+     * Chain is an array of boxes, one per layer, such that box of upper layer contains box of lower one.
+     * It's climbed up only to the lowest layer, which box contains point and is lower than box of upper layer,
+     * then lowest predecessors are found descending by links. Boxes of upper layers are left as is
+     * (they still contain point)
+     *
+     * @param predChain chain, found for previous point (with all it's boxes still attached), or null
+     * @return updated chain (new array, if layers have been added since it was found)
+     */
+    private BoxSector[] updatePredecessorChain(BoxSector[] predChain, Point2d point) {
+        int size = layers.size();
+        if (predChain == null || predChain.length < size) {
+            int from = predChain == null ? 0 : predChain.length;
+            predChain = predChain == null ? new BoxSector[size] : Arrays.copyOf(predChain, size);
+            for (int i = from; i < size; ++i) {
+                predChain[i] = layers.get(i);
+            }
+        }
+        if (size == 0) {
+            return predChain;
+        }
+        double x = point.getX(), y = point.getY();
+        int top = 0;
+        while (top < size - 1 && (!predChain[top].encloses(x, y, x, y)
+                || predChain[top + 1].getDepth() == predChain[top].getDepth())) {
+            top++;
+        }
+        BoxSector start = predChain[top];
+        while (!start.encloses(x, y, x, y) && start.getParent() != null) {
+            start = start.getParent();
+        }
+        for (int i = top; i >= 0; --i) {
+            BoxSector pred = findLowestPredecessor(start, point);
+            predChain[i] = pred;
+            if (i > 0) {
+                start = pred.getLink() != null ? pred.getLink() : layers.get(i - 1);
             }
-            BoxSector pred = lastLink.findLowestPredecessor(point);
-            predChain.add(pred);
-            lastLink = pred.getLink();
         }
-        Collections.reverse(predChain);
         return predChain;
     }
 
     @Override
     public boolean remove(Point2d point) {
         if (BoxSector.checkEquals(ZERO_POINT, point, precision)) {
-            boolean contained = containsZero;
-            containsZero = false;
+            boolean contained = zeroPoint != null;
+            zeroPoint = null;
             return contained;
         }
         if (BoxSector.checkEquals(ONE_POINT, point, precision)) {
-            boolean contained = containsOne;
-            containsOne = false;
+            boolean contained = onePoint != null;
+            onePoint = null;
             return contained;
         }
-        List<BoxSector> predChain = getPredecessorChain(point);
-        for (int i = 0; i < predChain.size(); ++i) {
-            BoxSector pred = predChain.get(i);
-            try {
-                pred.remove(point);
-            } catch (PointIsAbsentException e) {
+        if (layers.isEmpty()) return false;
+        return remove(point, getPredecessorChain(point));
+    }
+
+    /**
+     * Removes point, not equal to sentinels
+     *
+     * @param predChain boxes, containing point, one per layer. Entries are replaced with lowest predecessors
+     *                  or their parents, if predecessors are detached by removal
+     */
+    private boolean remove(Point2d point, BoxSector[] predChain) {
+        for (int i = 0; i < predChain.length; ++i) {
+            BoxSector pred = findLowestPredecessor(predChain[i], point);
+            predChain[i] = pred;
+            if (!pred.remove(point)) {
                 return i > 0;
             }
+            modCount++;
+            if (pred.countNonNull() < 2) {
+                predChain[i] = pred.getParent();
+            }
         }
         return true;
     }
 
+    /**
+     * Adds points through {@link #cursor()}, so that predecessor chain of each point is found from the chain of previous one
+     *
+     * @see QuadTreeCursor#addAll(Collection)
+     */
+    @Override
+    public int addAll(Collection<Point2d> points) {
+        return cursor().addAll(points);
+    }
+
+    @Override
+    public int removeAll(Collection<Point2d> points) {
+        return cursor().removeAll(points);
+    }
+
+    @Override
+    public boolean containsAll(Collection<Point2d> points) {
+        return cursor().containsAll(points);
+    }
+
+    /**
+     * Returns cursor, keeping predecessor chain of the last point (one finger per layer)
+     */
+    public QuadTreeCursor cursor() {
+        return new Cursor();
+    }
+
+    private class Cursor implements QuadTreeCursor {
+        private BoxSector[] predChain;
+        private int expectedModCount;
+
+        private boolean isSpecial(Point2d point) {
+            return layers.isEmpty() || BoxSector.checkEquals(ZERO_POINT, point, precision)
+                    || BoxSector.checkEquals(ONE_POINT, point, precision);
+        }
+
+        private BoxSector[] locate(Point2d point) {
+            if (expectedModCount != modCount) {
+                predChain = null;
+            }
+            predChain = updatePredecessorChain(predChain, point);
+            return predChain;
+        }
+
+        @Override
+        public boolean contains(Point2d point) {
+            if (isSpecial(point)) {
+                return SkipQuadTree.this.contains(point);
+            }
+            return locate(point)[0].contains(point);
+        }
+
+        @Override
+        public boolean add(Point2d point) {
+            if (isSpecial(point)) {
+                return SkipQuadTree.this.add(point);
+            }
+            return SkipQuadTree.this.add(point, locate(point));
+        }
+
+        @Override
+        public boolean remove(Point2d point) {
+            if (isSpecial(point)) {
+                return SkipQuadTree.this.remove(point);
+            }
+            boolean removed = SkipQuadTree.this.remove(point, locate(point));
+            expectedModCount = modCount;
+            return removed;
+        }
+    }
+
+    @Override
+    public void rangeQuery(Point2d topLeft, Point2d bottomRight, Consumer<Point2d> consumer) {
+        double x1 = topLeft.getX(), y1 = topLeft.getY(), x2 = bottomRight.getX(), y2 = bottomRight.getY();
+        if (zeroPoint != null && PointSector.isWithin(zeroPoint, x1, y1, x2, y2)) {
+            consumer.accept(zeroPoint);
+        }
+        if (!layers.isEmpty()) {
+            layers.get(0).rangeQuery(x1, y1, x2, y2, consumer);
+        }
+        if (onePoint != null && PointSector.isWithin(onePoint, x1, y1, x2, y2)) {
+            consumer.accept(onePoint);
+        }
+    }
+
+    /**
+     * Traverses the lowest layer, points, equal to sentinels, go first and last in Z-order.
+     * Tree shouldn't be modified while spliterator is in use
+     */
+    @Override
+    public Spliterator<Point2d> rangeSpliterator(Point2d topLeft, Point2d bottomRight) {
+        return new SectorSpliterator(topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY(),
+                zeroPoint == null ? null : new PointSector(zeroPoint, precision),
+                layers.isEmpty() ? null : layers.get(0),
+                onePoint == null ? null : new PointSector(onePoint, precision));
+    }
+
+    @Override
+    public int rangeCount(Point2d topLeft, Point2d bottomRight) {
+        double x1 = topLeft.getX(), y1 = topLeft.getY(), x2 = bottomRight.getX(), y2 = bottomRight.getY();
+        int counter = 0;
+        if (zeroPoint != null && PointSector.isWithin(zeroPoint, x1, y1, x2, y2)) {
+            counter++;
+        }
+        if (!layers.isEmpty()) {
+            counter += layers.get(0).rangeCount(x1, y1, x2, y2);
+        }
+        if (onePoint != null && PointSector.isWithin(onePoint, x1, y1, x2, y2)) {
+            counter++;
+        }
+        return counter;
+    }
+
+    /**
+     * Approximately counts points within rectangle: every point within rectangle is counted,
+     * points, lying within distance eps * w of rectangle (where w is the length of rectangle's longer side),
+     * may be counted or not. Rectangle is located through the layers, then only boxes, crossing
+     * border of rectangle's neighbourhood, are visited in the lowest layer
+     */
+    public int rangeCountApprox(Point2d topLeft, Point2d bottomRight, double eps) {
+        if (eps < 0) {
+            throw new IllegalArgumentException("Negative eps passed: " + eps);
+        }
+        double x1 = topLeft.getX(), y1 = topLeft.getY(), x2 = bottomRight.getX(), y2 = bottomRight.getY();
+        int counter = 0;
+        if (zeroPoint != null && PointSector.isWithin(zeroPoint, x1, y1, x2, y2)) {
+            counter++;
+        }
+        if (onePoint != null && PointSector.isWithin(onePoint, x1, y1, x2, y2)) {
+            counter++;
+        }
+        if (!layers.isEmpty()) {
+            double slack = eps * Math.max(x2 - x1, y2 - y1);
+            BoxSector boxSector = layers.get(layers.size() - 1);
+            for (int i = layers.size() - 1; ; --i) {
+                boxSector = boxSector.findLowestEnclosing(x1, y1, x2, y2);
+                if (i == 0) {
+                    break;
+                }
+                boxSector = boxSector.getLink();
+            }
+            counter += boxSector.rangeCountApprox(x1, y1, x2, y2, slack);
+        }
+        return counter;
+    }
+
+    /**
+     * Finds k points of tree, closest to the given one, traversing the lowest layer by {@link NearestIterator}
+     * (points, equal to sentinels, are added aside)
+     *
+     * @return points, sorted by increasing distance
+     */
+    @Override
+    public List<Point2d> nearest(Point2d point, int k) {
+        List<Point2d> result = new ArrayList<>();
+        Iterator<Point2d> iterator = new NearestIterator(layers.isEmpty() ? null : layers.get(0), point);
+        while (result.size() < k && iterator.hasNext()) {
+            result.add(iterator.next());
+        }
+        if (k > 0) {
+            if (zeroPoint != null) {
+                result.add(zeroPoint);
+            }
+            if (onePoint != null) {
+                result.add(onePoint);
+            }
+            result.sort(Comparator.comparingDouble(point::distanceSq));
+        }
+        return result.size() > k ? new ArrayList<>(result.subList(0, k)) : result;
+    }
+
+    /**
+     * Finds (1+eps)-approximate nearest neighbour of point, i.e. such point p of tree,
+     * that no other point is closer than dist(point, p) / (1 + eps).
+     * Point is located through the layers, and in every upper layer candidate is refined locally
+     * within predecessor (see {@link ApproximateNearestSearch#refine(BoxSector)}), so it takes O(1) per layer.
+     * Then search is finished in the lowest layer, climbing from predecessor only while it's needed
+     *
+     * @return approximate nearest point or null if tree is empty
+     */
+    public Point2d nearestApprox(Point2d point, double eps) {
+        ApproximateNearestSearch search = new ApproximateNearestSearch(point, eps);
+        search.offer(zeroPoint);
+        search.offer(onePoint);
+        if (!layers.isEmpty()) {
+            Point2d clamped = new Point2d(clamp(point.getX()), clamp(point.getY()));
+            BoxSector start = layers.get(layers.size() - 1);
+            for (int i = layers.size() - 1; ; --i) {
+                BoxSector pred = findLowestPredecessor(start, clamped);
+                if (i == 0) {
+                    search.search(pred);
+                    break;
+                }
+                search.refine(pred);
+                start = pred.getLink() != null ? pred.getLink() : layers.get(i - 1);
+            }
+        }
+        return search.getBest();
+    }
+
+    private static double clamp(double c) {
+        return Math.max(0, Math.min(c, CLOSEST_TO_ONE));
+    }
+
 }
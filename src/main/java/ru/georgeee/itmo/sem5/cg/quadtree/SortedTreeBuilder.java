@@ -0,0 +1,63 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Builds compressed quad tree from sectors, coming in Z-order (leaves or whole subtrees of disjoint cells).
+ * Box of two consecutive sectors is the lowest common cell of last point of the first one and first point of the second one,
+ * so right spine of tree being built is kept in stack
+ */
+class SortedTreeBuilder {
+    private final double precision;
+    private final Deque<BoxSector> stack = new ArrayDeque<>();
+    private final double[] bounds = new double[3];
+    private Sector pending;
+    private Point2d lastPoint;
+
+    SortedTreeBuilder(double precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Appends sector, which should follow previous ones in Z-order and don't share any box with them
+     * (i.e. lowest common cell of previous sectors and this one should be greater, than box of this sector)
+     *
+     * @param first first point of sector in Z-order
+     * @param last  last point of sector in Z-order
+     */
+    void append(Sector sector, Point2d first, Point2d last) {
+        if (pending != null) {
+            int depth = BoxSector.findMinEnclosing(bounds, lastPoint, first);
+            while (!stack.isEmpty() && stack.peek().getDepth() > depth) {
+                BoxSector boxSector = stack.pop();
+                boxSector.attach(pending);
+                pending = boxSector;
+            }
+            if (stack.isEmpty() || stack.peek().getDepth() < depth) {
+                stack.push(new BoxSector(new Point2d(bounds[0], bounds[1]), depth, bounds[2], precision));
+            }
+            stack.peek().attach(pending);
+        }
+        pending = sector;
+        lastPoint = last;
+    }
+
+    void append(PointSector leaf) {
+        append(leaf, leaf.getPoint(), leaf.getPoint());
+    }
+
+    /**
+     * @return root of tree, or null if nothing was appended
+     */
+    Sector build() {
+        while (!stack.isEmpty()) {
+            BoxSector boxSector = stack.pop();
+            boxSector.attach(pending);
+            pending = boxSector;
+        }
+        return pending;
+    }
+}
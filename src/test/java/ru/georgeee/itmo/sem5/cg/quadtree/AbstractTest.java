@@ -9,6 +9,7 @@ import ru.georgeee.itmo.sem5.cg.common.Point2d;
 import java.util.*;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 abstract class AbstractTest extends TestCase {
     private static final Logger log = LoggerFactory.getLogger(AbstractTest.class);
@@ -16,6 +17,13 @@ abstract class AbstractTest extends TestCase {
     private static final int LARGE_RANDOM_TEST_REPEAT = 3;
     private static final int[] RANDOM_TEST_COUNTS = {3, 5, 10, 100, 1000};
     private static final int RANDOM_TEST_REPEAT = 10;
+    private static final int RANGE_QUERY_COUNT = 20;
+    private static final int CURSOR_TEST_STEPS = 3000;
+    private static final int CURSOR_DISTURBANCE_PERIOD = 100;
+    private static final double CURSOR_STEP = 0.01;
+    static final int[] NEAREST_COUNTS = {1, 2, 10, 2000};
+    private static final double CLUSTER_CORNER = 0.3;
+    private static final double CLUSTER_SIDE = 1.0E-6;
     final Random random = new Random(System.currentTimeMillis());
 
     void validateSector(Sector sector, Collection<Point2d> addedPoints) {
@@ -32,7 +40,10 @@ abstract class AbstractTest extends TestCase {
         if (sector == null) {
             return;
         }
-        assertTrue(sector.getParent() == parent);
+        //Sectors of previous epochs are shared with snapshots and keep parents of the version they were created in
+        if (parent != null && sector.getEpoch() == parent.getEpoch()) {
+            assertTrue(sector.getParent() == parent);
+        }
         //Min, max transitivity
         if (parent != null && parent.getTopLeft() != null) {
             assertTrue(sector.getTopLeft().compareTo(parent.getTopLeft()) >= 0);
@@ -50,6 +61,12 @@ abstract class AbstractTest extends TestCase {
             BoxSector boxSector = (BoxSector) sector;
             List<SubSectorType> allTypes = Arrays.asList(SubSectorType.values());
             assertTrue(boxSector.countNonNull() >= 2);
+            int size = 0;
+            for (SubSectorType type : SubSectorType.values()) {
+                Sector subSector = boxSector.getSubSector(type);
+                size += subSector == null ? 0 : subSector.getSize();
+            }
+            assertEquals(size, boxSector.getSize());
             Predicate<SubSectorType> notNull = t -> boxSector.getSubSector(t) != null;
             allTypes.stream().filter(notNull).forEach(type -> {
                 checkWithin(type, boxSector);
@@ -93,6 +110,18 @@ abstract class AbstractTest extends TestCase {
         return new Point2d(random.nextDouble(), random.nextDouble());
     }
 
+    /**
+     * Generates points, half of which are random and half lie in tiny square, so tree gets deep chains of boxes
+     */
+    List<Point2d> genClusteredPoints(int count) {
+        List<Point2d> points = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            points.add(i % 2 == 0 ? genRandomPoint()
+                    : new Point2d(CLUSTER_CORNER + random.nextDouble() * CLUSTER_SIDE, CLUSTER_CORNER + random.nextDouble() * CLUSTER_SIDE));
+        }
+        return points;
+    }
+
     Void testOnPrecisions(Function<Double, ?> f) {
         log.info("Testing on fair comparator");
         f.apply(0.0);
@@ -168,6 +197,9 @@ abstract class AbstractTest extends TestCase {
                 assertTrue(quadTree.contains(point));
             }
             validateSkipQuadTree(quadTree);
+            checkRangeQueries(quadTree, addedPoints);
+            checkIteration(quadTree, addedPoints);
+            checkNearest(quadTree, addedPoints);
             for (int i = 0; i < addedPoints.size() / 2; ++i) {
                 Point2d point = addedPoints.get(i);
                 assertTrue(quadTree.contains(point));
@@ -176,6 +208,8 @@ abstract class AbstractTest extends TestCase {
                 assertFalse(quadTree.contains(point));
             }
             validateSkipQuadTree(quadTree);
+            checkRangeQueries(quadTree, addedPoints.subList(addedPoints.size() / 2, addedPoints.size()));
+            checkIteration(quadTree, addedPoints.subList(addedPoints.size() / 2, addedPoints.size()));
         } catch (AssertionError | AssertionFailedError | RuntimeException e) {
             log.error("Assertion failed, points: {}", points.toString(), e);
             throw e;
@@ -183,6 +217,135 @@ abstract class AbstractTest extends TestCase {
         return null;
     }
 
+    Void testQuadTree(QuadTree quadTree, List<Point2d> points) {
+        List<Point2d> addedPoints = new ArrayList<>();
+        try {
+            for (Point2d point : points) {
+                if (quadTree.add(point)) {
+                    addedPoints.add(point);
+                }
+                assertTrue(quadTree.contains(point));
+            }
+            checkRangeQueries(quadTree, addedPoints);
+            checkIteration(quadTree, addedPoints);
+            checkNearest(quadTree, addedPoints);
+            for (int i = 0; i < addedPoints.size() / 2; ++i) {
+                Point2d point = addedPoints.get(i);
+                assertTrue(quadTree.contains(point));
+                assertTrue(quadTree.remove(point));
+                assertFalse(quadTree.remove(point));
+                assertFalse(quadTree.contains(point));
+            }
+            checkRangeQueries(quadTree, addedPoints.subList(addedPoints.size() / 2, addedPoints.size()));
+            checkIteration(quadTree, addedPoints.subList(addedPoints.size() / 2, addedPoints.size()));
+        } catch (AssertionError | AssertionFailedError | RuntimeException e) {
+            log.error("Assertion failed, points: {}", points.toString(), e);
+            throw e;
+        }
+        return null;
+    }
+
+    void checkRangeQueries(QuadTreeView quadTree, Collection<Point2d> points) {
+        for (int i = 0; i < RANGE_QUERY_COUNT; ++i) {
+            Point2d a = genRandomPoint();
+            Point2d b = genRandomPoint();
+            Point2d topLeft = new Point2d(Math.min(a.getX(), b.getX()), Math.min(a.getY(), b.getY()));
+            Point2d bottomRight = new Point2d(Math.max(a.getX(), b.getX()), Math.max(a.getY(), b.getY()));
+            Set<Point2d> expected = new HashSet<>();
+            for (Point2d point : points) {
+                if (topLeft.getX() <= point.getX() && point.getX() <= bottomRight.getX()
+                        && topLeft.getY() <= point.getY() && point.getY() <= bottomRight.getY()) {
+                    expected.add(point);
+                }
+            }
+            Set<Point2d> actual = new HashSet<>();
+            quadTree.rangeQuery(topLeft, bottomRight, p -> assertTrue(actual.add(p)));
+            assertEquals(expected, actual);
+            assertEquals(expected.size(), quadTree.rangeCount(topLeft, bottomRight));
+        }
+        Set<Point2d> all = new HashSet<>();
+        quadTree.rangeQuery(new Point2d(0, 0), new Point2d(1, 1), p -> assertTrue(all.add(p)));
+        assertEquals(new HashSet<>(points), all);
+    }
+
+    /**
+     * Compares nearest points of random query with points of tree, sorted by distance
+     */
+    void checkNearest(QuadTreeView quadTree, Collection<Point2d> points) {
+        Point2d query = genRandomPoint();
+        List<Point2d> expected = new ArrayList<>(points);
+        expected.sort(Comparator.comparingDouble(query::distanceSq));
+        for (int k : NEAREST_COUNTS) {
+            List<Point2d> nearest = quadTree.nearest(query, k);
+            assertEquals(Math.min(k, expected.size()), nearest.size());
+            for (int i = 0; i < nearest.size(); ++i) {
+                assertEquals(expected.get(i).distanceSq(query), nearest.get(i).distanceSq(query));
+            }
+        }
+    }
+
+    /**
+     * Checks that iteration, streams and range streams report points in Z-order
+     */
+    void checkIteration(QuadTreeView quadTree, Collection<Point2d> points) {
+        List<Point2d> expected = new ArrayList<>(points);
+        expected.sort(MortonOrder.COMPARATOR);
+        List<Point2d> actual = new ArrayList<>();
+        for (Point2d point : quadTree) {
+            actual.add(point);
+        }
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), quadTree.spliterator().estimateSize());
+        assertEquals(expected, quadTree.stream().parallel().collect(Collectors.toList()));
+        for (int i = 0; i < RANGE_QUERY_COUNT; ++i) {
+            Point2d a = genRandomPoint();
+            Point2d b = genRandomPoint();
+            double x1 = Math.min(a.getX(), b.getX()), y1 = Math.min(a.getY(), b.getY());
+            double x2 = Math.max(a.getX(), b.getX()), y2 = Math.max(a.getY(), b.getY());
+            List<Point2d> expectedRange = expected.stream()
+                    .filter(p -> x1 <= p.getX() && p.getX() <= x2 && y1 <= p.getY() && p.getY() <= y2)
+                    .collect(Collectors.toList());
+            assertEquals(expectedRange, quadTree.rangeStream(new Point2d(x1, y1), new Point2d(x2, y2)).parallel().collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Moves point along random walk, doing operations through cursor and comparing results with reference tree.
+     * Periodically tree is changed bypassing cursor and disturbance is run
+     */
+    void checkCursor(QuadTree quadTree, QuadTreeCursor cursor, QuadTree reference, Runnable disturbance) {
+        Point2d point = genRandomPoint();
+        List<Point2d> visited = new ArrayList<>();
+        for (int i = 0; i < CURSOR_TEST_STEPS; ++i) {
+            point = new Point2d(walk(point.getX()), walk(point.getY()));
+            visited.add(point);
+            Point2d target = random.nextInt(4) == 0 ? visited.get(random.nextInt(visited.size())) : point;
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    assertEquals(reference.add(target), cursor.add(target));
+                    break;
+                case 2:
+                    assertEquals(reference.remove(target), cursor.remove(target));
+                    break;
+                default:
+                    assertEquals(reference.contains(target), cursor.contains(target));
+            }
+            if (i % CURSOR_DISTURBANCE_PERIOD == 0) {
+                Point2d removed = visited.get(random.nextInt(visited.size()));
+                assertEquals(reference.remove(removed), quadTree.remove(removed));
+                disturbance.run();
+            }
+        }
+        List<Point2d> points = new ArrayList<>();
+        reference.rangeQuery(new Point2d(0, 0), new Point2d(1, 1), points::add);
+        checkRangeQueries(quadTree, points);
+    }
+
+    private double walk(double c) {
+        return Math.max(0, Math.min(0.999, c + (random.nextDouble() - 0.5) * CURSOR_STEP));
+    }
+
     void validateSkipQuadTree(SkipQuadTree quadTree) {
         for (BoxSector layer : quadTree.layers) {
             validateSector(layer, null);
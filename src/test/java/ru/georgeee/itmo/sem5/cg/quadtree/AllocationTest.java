@@ -0,0 +1,105 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Checks allocated bytes per operation: contains and remove shouldn't allocate at all,
+ * add should allocate only sectors it links into tree
+ */
+public class AllocationTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(AllocationTest.class);
+    private static final int POINT_COUNT = 20000;
+    private static final int WARM_UP_ROUNDS = 5;
+    /**
+     * Allowed noise of measurement for the whole round of operations
+     */
+    private static final long ALLOWED_NOISE = 1024;
+    /**
+     * Point sector and box sector (with it's top left corner) per layer,
+     * skip quad tree has two layers per point in average
+     */
+    private static final long MAX_COMPRESSED_ADD_BYTES = 256;
+    private static final long MAX_SKIP_ADD_BYTES = 768;
+
+    private final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public void testCompressed() {
+        testAllocations(CompressedQuadTree::new, MAX_COMPRESSED_ADD_BYTES);
+    }
+
+    public void testSkip() {
+        testAllocations(SkipQuadTree::new, MAX_SKIP_ADD_BYTES);
+    }
+
+    private void testAllocations(Supplier<QuadTree> supplier, long maxAddBytes) {
+        if (!threadMXBean.isThreadAllocatedMemorySupported()) {
+            log.warn("Thread allocated memory measurement is not supported, skipping");
+            return;
+        }
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        Point2d[] points = new Point2d[POINT_COUNT];
+        Point2d[] absent = new Point2d[POINT_COUNT];
+        for (int i = 0; i < POINT_COUNT; ++i) {
+            points[i] = genRandomPoint();
+            absent[i] = genRandomPoint();
+        }
+        for (int round = 0; round <= WARM_UP_ROUNDS; ++round) {
+            boolean check = round == WARM_UP_ROUNDS;
+            QuadTree quadTree = supplier.get();
+            long addBytes = measure(() -> addAll(quadTree, points));
+            long duplicateBytes = measure(() -> addAll(quadTree, points));
+            long containsBytes = measure(() -> containsAll(quadTree, points) + containsAll(quadTree, absent));
+            long removeAbsentBytes = measure(() -> removeAll(quadTree, absent));
+            long removeBytes = measure(() -> removeAll(quadTree, points));
+            if (check) {
+                log.info("Allocated bytes: add {} per point, duplicate add {}, contains {}, remove {}, remove absent {}",
+                        addBytes / POINT_COUNT, duplicateBytes, containsBytes, removeBytes, removeAbsentBytes);
+                assertTrue(addBytes <= maxAddBytes * POINT_COUNT);
+                assertTrue(duplicateBytes <= ALLOWED_NOISE);
+                assertTrue(containsBytes <= ALLOWED_NOISE);
+                assertTrue(removeAbsentBytes <= ALLOWED_NOISE);
+                assertTrue(removeBytes <= ALLOWED_NOISE);
+            }
+        }
+    }
+
+    private long measure(IntSupplier action) {
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        int result = action.getAsInt();
+        long after = threadMXBean.getThreadAllocatedBytes(threadId);
+        assertTrue(result >= 0);
+        return after - before;
+    }
+
+    private static int addAll(QuadTree quadTree, Point2d[] points) {
+        int counter = 0;
+        for (Point2d point : points) {
+            if (quadTree.add(point)) counter++;
+        }
+        return counter;
+    }
+
+    private static int containsAll(QuadTree quadTree, Point2d[] points) {
+        int counter = 0;
+        for (Point2d point : points) {
+            if (quadTree.contains(point)) counter++;
+        }
+        return counter;
+    }
+
+    private static int removeAll(QuadTree quadTree, Point2d[] points) {
+        int counter = 0;
+        for (Point2d point : points) {
+            if (quadTree.remove(point)) counter++;
+        }
+        return counter;
+    }
+}
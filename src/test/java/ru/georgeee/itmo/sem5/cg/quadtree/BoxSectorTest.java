@@ -74,7 +74,7 @@ public class BoxSectorTest extends AbstractTest {
     Void testPoints(List<Point2d> points, double precision) {
         boolean testIsNew = points.size() <= TEST_POINT_EXISTENCE_THRESHOLD;
         List<Point2d> addedPoints = new ArrayList<>();
-        Sector sector = null;
+        CompressedQuadTree quadTree = new CompressedQuadTree(precision);
         try {
             for (int i = 0; i < points.size(); ++i) {
                 Point2d p = points.get(i);
@@ -91,41 +91,27 @@ public class BoxSectorTest extends AbstractTest {
                         addedPoints.add(p);
                     }
                 }
-                if (sector == null) {
-                    sector = new PointSector(p, precision);
-                } else {
-                    try {
-                        sector = sector.add(p);
-                        if (testIsNew) {
-                            assertTrue(isNewPoint);
-                        }
-                    } catch (PointAlreadyExistsException e) {
-                        if (testIsNew) {
-                            assertFalse(isNewPoint);
-                        }
-                    }
-                    assertTrue(sector.contains(p));
+                boolean added = quadTree.add(p);
+                if (testIsNew) {
+                    assertEquals(isNewPoint, added);
                 }
+                assertTrue(quadTree.root.contains(p));
             }
             if (testIsNew) {
-                validateSector(sector, addedPoints);
-                assertNotNull(sector);
+                validateSector(quadTree.root, addedPoints);
+                assertNotNull(quadTree.root);
                 int halfSize = addedPoints.size() / 2;
                 for (int i = addedPoints.size() - 1; i > halfSize; --i) {
                     Point2d point = addedPoints.get(i);
-                    assertTrue(sector.contains(point));
+                    assertTrue(quadTree.root.contains(point));
                     addedPoints.remove(i);
-                    sector = sector.remove(point);
-                    try {
-                        sector = sector.remove(point);
-                        assertTrue(false);
-                    }catch (PointIsAbsentException e){
-                    }
-                    assertFalse(sector.contains(point));
+                    assertTrue(quadTree.remove(point));
+                    assertFalse(quadTree.remove(point));
+                    assertFalse(quadTree.root.contains(point));
                 }
-                validateSector(sector, addedPoints);
+                validateSector(quadTree.root, addedPoints);
             } else {
-                validateSector(sector, null);
+                validateSector(quadTree.root, null);
             }
         } catch (AssertionFailedError | RuntimeException e) {
             log.error("Assertion failed, points: {}", points.toString(), e);
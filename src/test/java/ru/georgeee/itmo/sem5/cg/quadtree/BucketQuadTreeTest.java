@@ -0,0 +1,59 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BucketQuadTreeTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(BucketQuadTreeTest.class);
+    private static final int[] LEAF_CAPACITIES = {1, 2, 16, 64};
+    private static final int MERGE_TEST_COUNT = 5000;
+
+    public void testRandom() {
+        for (int capacity : LEAF_CAPACITIES) {
+            log.info("Testing random points, leaf capacity {}", capacity);
+            testOnPrecisions(prec -> testRandomPoints(ps -> testQuadTree(new BucketQuadTree(capacity, prec), ps)));
+        }
+    }
+
+    public void testCluster() {
+        List<Point2d> points = genClusteredPoints(2 * MERGE_TEST_COUNT);
+        for (int capacity : LEAF_CAPACITIES) {
+            log.info("Testing clustered points, leaf capacity {}", capacity);
+            testQuadTree(new BucketQuadTree(capacity), points);
+        }
+    }
+
+    public void testMerge() {
+        int capacity = 16;
+        BucketQuadTree quadTree = new BucketQuadTree(capacity);
+        List<Point2d> points = new ArrayList<>();
+        for (int i = 0; i < MERGE_TEST_COUNT; ++i) {
+            Point2d point = genRandomPoint();
+            points.add(point);
+            assertTrue(quadTree.add(point));
+        }
+        assertEquals(MERGE_TEST_COUNT, quadTree.size());
+        //Every box holds more than capacity points, so there are far less boxes than in compressed quad tree
+        assertTrue(quadTree.getBoxCount() < MERGE_TEST_COUNT / capacity * 2);
+        for (int i = capacity; i < MERGE_TEST_COUNT; ++i) {
+            assertTrue(quadTree.remove(points.get(i)));
+            assertFalse(quadTree.remove(points.get(i)));
+        }
+        assertEquals(capacity, quadTree.size());
+        assertEquals(0, quadTree.getBoxCount());
+        checkIteration(quadTree, points.subList(0, capacity));
+    }
+
+    public void testIllegalCapacity() {
+        try {
+            new BucketQuadTree(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
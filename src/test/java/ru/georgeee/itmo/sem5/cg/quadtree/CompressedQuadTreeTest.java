@@ -0,0 +1,221 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+
+public class CompressedQuadTreeTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(CompressedQuadTreeTest.class);
+    private static final double[][] MANUAL_DATA_SETS = {
+            {0.24277906389712256, 0.7288499200744581, 0.32330609761165474, 0.8583650947555813, 0.12094814223373274, 0.44575684846814223},
+            {0, 0, 1, 1, 0.5, 0.5, 0, 1, 1, 0},
+    };
+    private static final int PARALLEL_BULK_LOAD_COUNT = 50000;
+    private static final int SPLIT_TEST_COUNT = 10001;
+    private static final double[] JOIN_DISTANCES = {0, 1.0E-6, 0.01, 0.1, 0.3};
+
+    public void testRandom() {
+        log.info("Testing random points");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testQuadTree(new CompressedQuadTree(prec), ps)));
+    }
+
+    public void testManual() {
+        log.info("Testing manually set point sets");
+        testOnPrecisions(prec -> testManual(ps -> testQuadTree(new CompressedQuadTree(prec), ps), MANUAL_DATA_SETS));
+    }
+
+    public void testSnapshot() {
+        log.info("Testing snapshots");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testSnapshot(ps, prec)));
+    }
+
+    public void testCursor() {
+        log.info("Testing cursor");
+        testOnPrecisions(prec -> {
+            CompressedQuadTree quadTree = new CompressedQuadTree(prec);
+            checkCursor(quadTree, quadTree.cursor(), new CompressedQuadTree(prec), () -> {
+            });
+            validateSector(quadTree.root, null);
+            quadTree = new CompressedQuadTree(prec);
+            checkCursor(quadTree, quadTree.cursor(), new CompressedQuadTree(prec), quadTree::snapshot);
+            validateSector(quadTree.root, null);
+            return null;
+        });
+    }
+
+    /**
+     * Box of previous epoch, which became root after removal, keeps parent from snapshot, so cursor shouldn't climb from it
+     */
+    public void testCursorAfterSnapshot() {
+        CompressedQuadTree quadTree = new CompressedQuadTree(0);
+        Point2d far = new Point2d(0.9, 0.9);
+        assertTrue(quadTree.add(new Point2d(0.1, 0.1)));
+        assertTrue(quadTree.add(new Point2d(0.2, 0.2)));
+        assertTrue(quadTree.add(far));
+        CompressedQuadTreeSnapshot snapshot = quadTree.snapshot();
+        assertTrue(quadTree.remove(far));
+        assertFalse(quadTree.cursor().contains(far));
+        assertFalse(quadTree.cursor().remove(far));
+        assertTrue(snapshot.contains(far));
+    }
+
+    public void testDistanceJoin() {
+        log.info("Testing distance join");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testDistanceJoin(ps, prec)));
+        testDistanceJoin(genClusteredPoints(200), 0);
+    }
+
+    public void testSpliterator() {
+        log.info("Testing spliterator splits");
+        List<Point2d> points = new ArrayList<>();
+        for (int i = 0; i < SPLIT_TEST_COUNT; ++i) {
+            points.add(genRandomPoint());
+        }
+        CompressedQuadTree quadTree = new CompressedQuadTree(points, 0);
+        Spliterator<Point2d> suffix = quadTree.spliterator();
+        Spliterator<Point2d> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        assertEquals(SPLIT_TEST_COUNT / 2, prefix.getExactSizeIfKnown());
+        assertEquals(SPLIT_TEST_COUNT - SPLIT_TEST_COUNT / 2, suffix.getExactSizeIfKnown());
+        List<Point2d> actual = new ArrayList<>();
+        prefix.forEachRemaining(actual::add);
+        suffix.forEachRemaining(actual::add);
+        points.sort(MortonOrder.COMPARATOR);
+        assertEquals(points, actual);
+    }
+
+    public void testBulkLoad() {
+        log.info("Testing bulk load");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testBulkLoad(ps, prec)));
+        testOnPrecisions(prec -> testManual(ps -> testBulkLoad(ps, prec), MANUAL_DATA_SETS));
+    }
+
+    public void testParallelBulkLoad() {
+        log.info("Testing parallel bulk load");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            testOnPrecisions(prec -> testRandomPoints(ps -> testBulkLoad(ps, prec, pool)));
+            testOnPrecisions(prec -> testManual(ps -> testBulkLoad(ps, prec, pool), MANUAL_DATA_SETS));
+            List<Point2d> points = genClusteredPoints(PARALLEL_BULK_LOAD_COUNT);
+            testOnPrecisions(prec -> testBulkLoad(points, prec, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    Void testBulkLoad(List<Point2d> points, double precision) {
+        return testBulkLoad(points, precision, null);
+    }
+
+    /**
+     * @param pool pool for parallel bulk load, or null for sequential one
+     */
+    Void testBulkLoad(List<Point2d> points, double precision, ForkJoinPool pool) {
+        List<Point2d> input = new ArrayList<>(points);
+        for (int i = 0; i < points.size() / 3; ++i) {
+            Point2d point = points.get(random.nextInt(points.size()));
+            input.add(random.nextBoolean() ? point : new Point2d(point.getX(), point.getY()));
+        }
+        CompressedQuadTree expected = new CompressedQuadTree(precision);
+        input.forEach(expected::add);
+        CompressedQuadTree actual = pool == null ? new CompressedQuadTree(input, precision)
+                : new CompressedQuadTree(input, precision, pool);
+        assertSameStructure(expected.root, actual.root);
+        validateSector(actual.root, null);
+        return null;
+    }
+
+    Void testSnapshot(List<Point2d> points, double precision) {
+        CompressedQuadTree quadTree = new CompressedQuadTree(precision);
+        List<Point2d> firstHalf = new ArrayList<>();
+        for (Point2d point : points.subList(0, points.size() / 2)) {
+            if (quadTree.add(point)) {
+                firstHalf.add(point);
+            }
+        }
+        CompressedQuadTreeSnapshot snapshot = quadTree.snapshot();
+        List<Point2d> addedPoints = new ArrayList<>(firstHalf);
+        for (Point2d point : points.subList(points.size() / 2, points.size())) {
+            if (quadTree.add(point)) {
+                addedPoints.add(point);
+            }
+        }
+        CompressedQuadTreeSnapshot secondSnapshot = quadTree.snapshot();
+        List<Point2d> allPoints = new ArrayList<>(addedPoints);
+        for (int i = 0; i < addedPoints.size(); i += 2) {
+            assertTrue(quadTree.remove(addedPoints.get(i)));
+        }
+        addedPoints.removeIf(p -> !quadTree.contains(p));
+        validateSector(quadTree.root, addedPoints);
+        checkRangeQueries(quadTree, addedPoints);
+        checkRangeQueries(snapshot, firstHalf);
+        checkRangeQueries(secondSnapshot, allPoints);
+        checkIteration(secondSnapshot, allPoints);
+        //Changes of tree don't touch sectors of snapshots, including their parent pointers
+        validateSector(snapshot.root, firstHalf);
+        validateSector(secondSnapshot.root, allPoints);
+        for (Point2d point : firstHalf) {
+            assertTrue(snapshot.contains(point));
+        }
+        assertTrue(snapshot.containsAll(firstHalf));
+        assertTrue(secondSnapshot.containsAll(allPoints));
+        assertEquals(allPoints.stream().allMatch(snapshot::contains), snapshot.containsAll(allPoints));
+        return null;
+    }
+
+    void assertSameStructure(Sector expected, Sector actual) {
+        if (expected instanceof PointSector) {
+            assertTrue(actual instanceof PointSector);
+            assertSame(((PointSector) expected).getPoint(), ((PointSector) actual).getPoint());
+        } else if (expected == null) {
+            assertNull(actual);
+        } else {
+            assertTrue(actual instanceof BoxSector);
+            BoxSector expectedBox = (BoxSector) expected;
+            BoxSector actualBox = (BoxSector) actual;
+            assertEquals(expectedBox.getTopLeft(), actualBox.getTopLeft());
+            assertEquals(expectedBox.getDepth(), actualBox.getDepth());
+            assertEquals(expectedBox.getSize(), actualBox.getSize());
+            for (SubSectorType type : SubSectorType.values()) {
+                assertSameStructure(expectedBox.getSubSector(type), actualBox.getSubSector(type));
+            }
+        }
+    }
+
+
+    private Void testDistanceJoin(List<Point2d> points, double precision) {
+        List<Point2d> left = points.subList(0, points.size() / 2);
+        List<Point2d> right = points.subList(points.size() / 2, points.size());
+        CompressedQuadTree leftTree = new CompressedQuadTree(left, precision);
+        CompressedQuadTree rightTree = new CompressedQuadTree(right, precision);
+        List<Point2d> leftPoints = new ArrayList<>(), rightPoints = new ArrayList<>();
+        leftTree.rangeQuery(new Point2d(0, 0), new Point2d(1, 1), leftPoints::add);
+        rightTree.rangeQuery(new Point2d(0, 0), new Point2d(1, 1), rightPoints::add);
+        for (double r : JOIN_DISTANCES) {
+            Set<List<Point2d>> expected = new HashSet<>();
+            for (Point2d a : leftPoints) {
+                for (Point2d b : rightPoints) {
+                    if (a.distanceSq(b) <= r * r) {
+                        expected.add(Arrays.asList(a, b));
+                    }
+                }
+            }
+            Set<List<Point2d>> actual = new HashSet<>();
+            leftTree.distanceJoin(rightTree, r, (a, b) -> assertTrue(actual.add(Arrays.asList(a, b))));
+            assertEquals(expected, actual);
+        }
+        //Unit square is within distance 2, so all pairs are reported at once
+        int[] counter = {0};
+        leftTree.distanceJoin(rightTree, 2, (a, b) -> counter[0]++);
+        assertEquals(leftPoints.size() * rightPoints.size(), counter[0]);
+        return null;
+    }
+}
@@ -0,0 +1,117 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class ConcurrentSkipQuadTreeTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(ConcurrentSkipQuadTreeTest.class);
+    private static final int THREAD_COUNT = 8;
+    private static final int POINTS_PER_THREAD = 5000;
+    private static final int SHARED_POINT_COUNT = 200;
+    private static final int SHARED_OPERATION_COUNT = 20000;
+
+    public void testRandom() {
+        log.info("Testing random points sequentially");
+        testOnCoins(coin -> testOnPrecisions(prec -> testRandomPoints(ps -> testQuadTree(new ConcurrentSkipQuadTree(coin, prec), ps))));
+    }
+
+    public void testDisjointWriters() throws Exception {
+        log.info("Testing concurrent writers on disjoint point sets");
+        ConcurrentSkipQuadTree quadTree = new ConcurrentSkipQuadTree();
+        List<List<Point2d>> pointSets = new ArrayList<>();
+        for (int i = 0; i < THREAD_COUNT; ++i) {
+            List<Point2d> points = new ArrayList<>();
+            for (int j = 0; j < POINTS_PER_THREAD; ++j) {
+                points.add(genRandomPoint());
+            }
+            pointSets.add(points);
+        }
+        Set<Point2d> remaining = ConcurrentHashMap.newKeySet();
+        runConcurrently(i -> {
+            List<Point2d> points = pointSets.get(i);
+            for (Point2d point : points) {
+                assertTrue(quadTree.add(point));
+            }
+            for (int j = 0; j < points.size(); ++j) {
+                assertTrue(quadTree.contains(points.get(j)));
+                if (j % 2 == 0) {
+                    assertTrue(quadTree.remove(points.get(j)));
+                    assertFalse(quadTree.contains(points.get(j)));
+                } else {
+                    remaining.add(points.get(j));
+                }
+            }
+        });
+        checkRangeQueries(quadTree, remaining);
+        for (List<Point2d> points : pointSets) {
+            for (Point2d point : points) {
+                assertEquals(remaining.contains(point), quadTree.contains(point));
+            }
+        }
+    }
+
+    public void testSharedPoints() throws Exception {
+        log.info("Testing concurrent writers on shared point set");
+        ConcurrentSkipQuadTree quadTree = new ConcurrentSkipQuadTree();
+        List<Point2d> points = new ArrayList<>();
+        for (int i = 0; i < SHARED_POINT_COUNT; ++i) {
+            points.add(genRandomPoint());
+        }
+        runConcurrently(i -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int j = 0; j < SHARED_OPERATION_COUNT; ++j) {
+                Point2d point = points.get(random.nextInt(points.size()));
+                int op = random.nextInt(10);
+                if (op == 0) {
+                    quadTree.add(point);
+                } else if (op == 1) {
+                    quadTree.remove(point);
+                } else {
+                    quadTree.contains(point);
+                }
+            }
+        });
+        Set<Point2d> present = new HashSet<>();
+        for (Point2d point : points) {
+            if (quadTree.contains(point)) {
+                present.add(point);
+            }
+        }
+        checkRangeQueries(quadTree, present);
+        for (Point2d point : present) {
+            assertTrue(quadTree.remove(point));
+        }
+        assertEquals(0, quadTree.rangeCount(new Point2d(0, 0), new Point2d(1, 1)));
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREAD_COUNT; ++i) {
+                int index = i;
+                futures.add(executor.submit(() -> task.run(index)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface ThreadTask {
+        void run(int index);
+    }
+}
@@ -0,0 +1,214 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DurableQuadTreeTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(DurableQuadTreeTest.class);
+    private static final int OPERATION_COUNT = 3000;
+    private static final int CHECKPOINT_INTERVAL = 500;
+    private static final int REOPEN_COUNT = 3;
+    private static final long FSYNC_INTERVAL = 10;
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("quadtree");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public void testCompressed() throws Exception {
+        log.info("Testing durable compressed quad tree");
+        for (DurableQuadTree.FsyncPolicy policy : DurableQuadTree.FsyncPolicy.values()) {
+            testReopen(ps -> new CompressedQuadTree(ps, 0), policy);
+        }
+    }
+
+    public void testSkip() throws Exception {
+        log.info("Testing durable skip quad tree");
+        testReopen(ps -> new SkipQuadTree(ps, null, 0), DurableQuadTree.FsyncPolicy.BATCH);
+    }
+
+    public void testQuadTree() {
+        testRandomPoints(ps -> {
+            try (DurableQuadTree quadTree = new DurableQuadTree(Files.createTempDirectory(directory, "tree"), cs -> new CompressedQuadTree(cs, 0))) {
+                return testQuadTree(quadTree, ps);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Tree is left without close after sync, as if process crashed, and its files are recovered by other instance
+     */
+    public void testCrash() throws Exception {
+        CompressedQuadTree reference = new CompressedQuadTree();
+        DurableQuadTree crashed = new DurableQuadTree(directory, ps -> new CompressedQuadTree(ps, 0),
+                DurableQuadTree.FsyncPolicy.NEVER, FSYNC_INTERVAL, CHECKPOINT_INTERVAL);
+        runOperations(crashed, reference);
+        crashed.sync();
+        try (DurableQuadTree recovered = new DurableQuadTree(directory, ps -> new CompressedQuadTree(ps, 0))) {
+            checkEqual(recovered, reference);
+        }
+        crashed.close();
+    }
+
+    public void testTornLog() throws Exception {
+        CompressedQuadTree reference = new CompressedQuadTree();
+        try (DurableQuadTree quadTree = new DurableQuadTree(directory, ps -> new CompressedQuadTree(ps, 0))) {
+            runOperations(quadTree, reference);
+        }
+        Path lastLog;
+        try (Stream<Path> paths = Files.list(directory)) {
+            lastLog = paths.filter(p -> p.getFileName().toString().startsWith("log-")).max(Comparator.naturalOrder()).get();
+        }
+        Files.write(lastLog, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        try (DurableQuadTree quadTree = new DurableQuadTree(directory, ps -> new CompressedQuadTree(ps, 0))) {
+            checkEqual(quadTree, reference);
+        }
+    }
+
+    /**
+     * Every deleted log should have been present, when directory was forced with checkpoint, covering it,
+     * and every remaining log should have been forced with directory after creation
+     */
+    public void testDirectoryForce() throws Exception {
+        CompressedQuadTree reference = new CompressedQuadTree();
+        RecordingQuadTree quadTree = new RecordingQuadTree(directory);
+        try {
+            runOperations(quadTree, reference);
+            quadTree.sync();
+        } finally {
+            quadTree.close();
+        }
+        List<DirectoryState> states = quadTree.getStates();
+        Set<Long> remaining = listLogs(directory);
+        Set<Long> created = new HashSet<>();
+        for (DirectoryState state : states) {
+            created.addAll(state.logs);
+        }
+        assertTrue(created.containsAll(remaining));
+        assertTrue(created.size() > remaining.size());
+        for (long generation : created) {
+            if (!remaining.contains(generation)) {
+                assertTrue(states.stream().anyMatch(s -> s.covered >= generation && s.logs.contains(generation)));
+            }
+        }
+    }
+
+    private static Set<Long> listLogs(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.map(p -> p.getFileName().toString())
+                    .filter(name -> name.startsWith("log-"))
+                    .map(name -> Long.parseLong(name.substring("log-".length())))
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    /**
+     * Logs and generation, covered by checkpoint, at the moment of directory force
+     */
+    private static class DirectoryState {
+        private final Set<Long> logs;
+        private final long covered;
+
+        DirectoryState(Path directory) throws IOException {
+            logs = listLogs(directory);
+            Path checkpoint = directory.resolve("checkpoint");
+            if (Files.exists(checkpoint)) {
+                try (DataInputStream in = new DataInputStream(Files.newInputStream(checkpoint))) {
+                    in.readInt();
+                    covered = in.readLong();
+                }
+            } else {
+                covered = -1;
+            }
+        }
+    }
+
+    /**
+     * Directory is forced by constructing thread and then by writer thread, so states are read after close
+     */
+    private static class RecordingQuadTree extends DurableQuadTree {
+        /**
+         * Created lazily: directory is forced by super constructor, before fields are initialized
+         */
+        private List<DirectoryState> states;
+
+        RecordingQuadTree(Path directory) throws IOException {
+            super(directory, ps -> new CompressedQuadTree(ps, 0), FsyncPolicy.NEVER, FSYNC_INTERVAL, CHECKPOINT_INTERVAL);
+        }
+
+        @Override
+        void forceDirectory() throws IOException {
+            super.forceDirectory();
+            if (states == null) {
+                states = new ArrayList<>();
+            }
+            states.add(new DirectoryState(getDirectory()));
+        }
+
+        List<DirectoryState> getStates() {
+            return states;
+        }
+    }
+
+    private void testReopen(Function<Collection<Point2d>, ? extends QuadTree> factory, DurableQuadTree.FsyncPolicy policy) throws IOException {
+        Path directory = Files.createTempDirectory(this.directory, "tree");
+        QuadTree reference = factory.apply(new ArrayList<>());
+        for (int i = 0; i < REOPEN_COUNT; ++i) {
+            try (DurableQuadTree quadTree = new DurableQuadTree(directory, factory, policy, FSYNC_INTERVAL, CHECKPOINT_INTERVAL)) {
+                checkEqual(quadTree, reference);
+                runOperations(quadTree, reference);
+            }
+        }
+        try (DurableQuadTree quadTree = new DurableQuadTree(directory, factory)) {
+            checkEqual(quadTree, reference);
+        }
+    }
+
+    private void runOperations(QuadTree quadTree, QuadTree reference) {
+        List<Point2d> points = new ArrayList<>();
+        for (int i = 0; i < OPERATION_COUNT; ++i) {
+            if (points.isEmpty() || random.nextInt(3) != 0) {
+                Point2d point = genRandomPoint();
+                points.add(point);
+                assertEquals(reference.add(point), quadTree.add(point));
+            } else {
+                Point2d point = points.get(random.nextInt(points.size()));
+                assertEquals(reference.remove(point), quadTree.remove(point));
+            }
+        }
+    }
+
+    private void checkEqual(QuadTree quadTree, QuadTree reference) {
+        List<Point2d> points = new ArrayList<>();
+        reference.rangeQuery(new Point2d(0, 0), new Point2d(1, 1), points::add);
+        checkRangeQueries(quadTree, points);
+    }
+}
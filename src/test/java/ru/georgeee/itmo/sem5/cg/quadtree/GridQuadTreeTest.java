@@ -0,0 +1,149 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class GridQuadTreeTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(GridQuadTreeTest.class);
+    private static final int[] COUNTS = {1, 2, 10, 100, 1000, 10000};
+    private static final int REPEAT = 5;
+    private static final int QUERY_COUNT = 20;
+    /**
+     * Small grid to get lots of duplicates
+     */
+    private static final long SMALL_BOUND = 50;
+
+    public void testSmallGrid() {
+        log.info("Testing grid quad tree on small grid");
+        for (int count : COUNTS) {
+            for (int i = 0; i < REPEAT; ++i) {
+                testGrid(count, SMALL_BOUND);
+            }
+        }
+    }
+
+    public void testFullGrid() {
+        log.info("Testing grid quad tree on full grid");
+        for (int count : COUNTS) {
+            for (int i = 0; i < REPEAT; ++i) {
+                testGrid(count, Long.MAX_VALUE);
+            }
+        }
+    }
+
+    public void testCorners() {
+        GridQuadTree quadTree = new GridQuadTree();
+        long[][] corners = {{0, 0}, {0, Long.MAX_VALUE}, {Long.MAX_VALUE, 0}, {Long.MAX_VALUE, Long.MAX_VALUE}, {1, 1}};
+        for (long[] corner : corners) {
+            assertTrue(quadTree.add(corner[0], corner[1]));
+        }
+        assertEquals(corners.length, quadTree.getSize());
+        assertEquals(corners.length, quadTree.rangeCount(0, 0, Long.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals(2, quadTree.rangeCount(0, 0, 1, 1));
+        for (long[] corner : corners) {
+            assertTrue(quadTree.contains(corner[0], corner[1]));
+            assertTrue(quadTree.remove(corner[0], corner[1]));
+            assertFalse(quadTree.contains(corner[0], corner[1]));
+        }
+        assertTrue(quadTree.isEmpty());
+    }
+
+    public void testNegative() {
+        GridQuadTree quadTree = new GridQuadTree();
+        try {
+            quadTree.add(-1, 0);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            quadTree.contains(0, Long.MIN_VALUE);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    public void testMapping() {
+        GridMapping mapping = new GridMapping(-10, 5, 0.5);
+        assertEquals(0, mapping.toGridX(-10));
+        assertEquals(3, mapping.toGridX(-8.25));
+        assertEquals(4, mapping.toGridY(7.4));
+        assertEquals(-8.5, mapping.toWorldX(3));
+        assertEquals(7.0, mapping.toWorldY(4));
+        try {
+            mapping.toGridX(-10.1);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            mapping.toGridY(Double.NaN);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            new GridMapping(0, 0, 0);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    private void testGrid(int count, long bound) {
+        GridQuadTree quadTree = new GridQuadTree();
+        Set<List<Long>> expected = new HashSet<>();
+        List<long[]> points = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            long[] point = {genCoordinate(bound), genCoordinate(bound)};
+            points.add(point);
+            assertEquals(expected.add(key(point)), quadTree.add(point[0], point[1]));
+            assertEquals(expected.size(), quadTree.getSize());
+        }
+        for (long[] point : points) {
+            assertTrue(quadTree.contains(point[0], point[1]));
+        }
+        checkRangeQueries(quadTree, expected, bound);
+        for (int i = 0; i < points.size(); i += 2) {
+            long[] point = points.get(i);
+            assertEquals(expected.remove(key(point)), quadTree.remove(point[0], point[1]));
+            assertFalse(quadTree.contains(point[0], point[1]));
+        }
+        assertEquals(expected.size(), quadTree.getSize());
+        checkRangeQueries(quadTree, expected, bound);
+        for (long[] point : points) {
+            assertEquals(expected.contains(key(point)), quadTree.contains(point[0], point[1]));
+        }
+    }
+
+    private void checkRangeQueries(GridQuadTree quadTree, Set<List<Long>> expected, long bound) {
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            long x1 = genCoordinate(bound), x2 = genCoordinate(bound);
+            long y1 = genCoordinate(bound), y2 = genCoordinate(bound);
+            long minX = Math.min(x1, x2), maxX = Math.max(x1, x2);
+            long minY = Math.min(y1, y2), maxY = Math.max(y1, y2);
+            Set<List<Long>> inside = new HashSet<>();
+            for (List<Long> point : expected) {
+                if (minX <= point.get(0) && point.get(0) <= maxX && minY <= point.get(1) && point.get(1) <= maxY) {
+                    inside.add(point);
+                }
+            }
+            Set<List<Long>> reported = new HashSet<>();
+            quadTree.rangeQuery(minX, minY, maxX, maxY, (x, y) -> assertTrue(reported.add(key(new long[]{x, y}))));
+            assertEquals(inside, reported);
+            assertEquals(inside.size(), quadTree.rangeCount(minX, minY, maxX, maxY));
+        }
+    }
+
+    private long genCoordinate(long bound) {
+        return (random.nextLong() & Long.MAX_VALUE) % bound;
+    }
+
+    private static List<Long> key(long[] point) {
+        List<Long> key = new ArrayList<>(2);
+        key.add(point[0]);
+        key.add(point[1]);
+        return key;
+    }
+}
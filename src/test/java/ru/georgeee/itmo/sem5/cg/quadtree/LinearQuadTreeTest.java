@@ -0,0 +1,51 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LinearQuadTreeTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(LinearQuadTreeTest.class);
+    private static final double[][] MANUAL_DATA_SETS = {
+            {0.24277906389712256, 0.7288499200744581, 0.32330609761165474, 0.8583650947555813, 0.12094814223373274, 0.44575684846814223},
+            {0, 0, 1, 1, 0.5, 0.5, 0, 1, 1, 0},
+    };
+
+    public void testRandom() {
+        log.info("Testing random points");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testQuadTree(new LinearQuadTree(prec), ps)));
+    }
+
+    public void testManual() {
+        log.info("Testing manually set point sets");
+        testOnPrecisions(prec -> testManual(ps -> testQuadTree(new LinearQuadTree(prec), ps), MANUAL_DATA_SETS));
+    }
+
+    public void testBulkLoad() {
+        log.info("Testing bulk load");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testBulkLoad(ps, prec)));
+    }
+
+    Void testBulkLoad(List<Point2d> points, double precision) {
+        CompressedQuadTree expected = new CompressedQuadTree(points, precision);
+        LinearQuadTree quadTree = new LinearQuadTree(points, precision);
+        for (Point2d point : points) {
+            assertTrue(quadTree.contains(point));
+            assertFalse(quadTree.add(point));
+        }
+        List<Point2d> storedPoints = new ArrayList<>();
+        expected.rangeQuery(new Point2d(0, 0), new Point2d(1, 1), storedPoints::add);
+        assertEquals(storedPoints.size(), quadTree.size());
+        checkRangeQueries(quadTree, storedPoints);
+        for (Point2d point : storedPoints) {
+            assertTrue(quadTree.remove(point));
+            assertFalse(quadTree.contains(point));
+        }
+        assertEquals(0, quadTree.size());
+        return null;
+    }
+
+}
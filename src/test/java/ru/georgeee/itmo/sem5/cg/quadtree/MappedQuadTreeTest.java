@@ -0,0 +1,119 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class MappedQuadTreeTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(MappedQuadTreeTest.class);
+    /**
+     * Small segments, so that sectors cross segment borders
+     */
+    private static final int SMALL_SEGMENT_BITS = 6;
+    private static final int MODIFICATION_COUNT = 1000;
+
+    public void testRandom() {
+        log.info("Testing mapped tree on random points");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testMapped(ps, prec, false)));
+    }
+
+    public void testSmallSegments() {
+        log.info("Testing mapped tree on small segments");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testMapped(ps, prec, true)));
+    }
+
+    public void testEmpty() throws IOException {
+        Path path = Files.createTempFile("quadtree", ".bin");
+        try {
+            new CompressedQuadTree().save(path);
+            MappedQuadTree quadTree = new MappedQuadTree(path);
+            assertEquals(0, quadTree.size());
+            assertFalse(quadTree.contains(new Point2d(0.5, 0.5)));
+            assertFalse(quadTree.remove(new Point2d(0.5, 0.5)));
+            testQuadTree(quadTree, Collections.singletonList(new Point2d(0.5, 0.5)));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    public void testWrongFormat() throws IOException {
+        Path path = Files.createTempFile("quadtree", ".bin");
+        try {
+            Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+            new MappedQuadTree(path);
+            fail();
+        } catch (IOException ignored) {
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private Void testMapped(List<Point2d> points, double precision, boolean smallSegments) {
+        CompressedQuadTree reference = new CompressedQuadTree(precision);
+        List<Point2d> addedPoints = new ArrayList<>();
+        for (Point2d point : points) {
+            if (reference.add(point)) {
+                addedPoints.add(point);
+            }
+        }
+        try {
+            Path path = Files.createTempFile("quadtree", ".bin");
+            try {
+                reference.save(path);
+                MappedQuadTree quadTree = smallSegments ? new MappedQuadTree(path, SMALL_SEGMENT_BITS) : new MappedQuadTree(path);
+                assertEquals(precision, quadTree.getPrecision());
+                assertEquals(addedPoints.size(), quadTree.size());
+                for (Point2d point : points) {
+                    assertTrue(quadTree.contains(point));
+                }
+                checkRangeQueries(quadTree, addedPoints);
+                checkModifications(quadTree, reference, addedPoints);
+            } finally {
+                Files.delete(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    /**
+     * Runs random operations on both trees, half of them on points of file
+     */
+    private void checkModifications(MappedQuadTree quadTree, CompressedQuadTree reference, List<Point2d> filePoints) {
+        List<Point2d> newPoints = new ArrayList<>();
+        for (int i = 0; i < MODIFICATION_COUNT; ++i) {
+            Point2d point;
+            if (random.nextBoolean()) {
+                point = filePoints.get(random.nextInt(filePoints.size()));
+            } else if (newPoints.isEmpty() || random.nextBoolean()) {
+                point = genRandomPoint();
+                newPoints.add(point);
+            } else {
+                point = newPoints.get(random.nextInt(newPoints.size()));
+            }
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(reference.add(point), quadTree.add(point));
+                    break;
+                case 1:
+                    assertEquals(reference.remove(point), quadTree.remove(point));
+                    break;
+                default:
+                    assertEquals(reference.contains(point), quadTree.contains(point));
+            }
+        }
+        List<Point2d> expected = new ArrayList<>();
+        reference.rangeQuery(new Point2d(0, 0), new Point2d(1, 1), expected::add);
+        assertEquals(expected.size(), quadTree.size());
+        checkRangeQueries(quadTree, expected);
+    }
+}
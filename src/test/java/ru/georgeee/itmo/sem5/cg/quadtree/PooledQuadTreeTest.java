@@ -0,0 +1,110 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class PooledQuadTreeTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(PooledQuadTreeTest.class);
+    private static final double[][] MANUAL_DATA_SETS = {
+            {0.24277906389712256, 0.7288499200744581, 0.32330609761165474, 0.8583650947555813, 0.12094814223373274, 0.44575684846814223},
+            {0, 0, 1, 1, 0.5, 0.5, 0, 1, 1, 0},
+    };
+    /**
+     * Skip quad tree is bounded by sentinels (0, 0) and (1 - ulp, 1 - ulp), so it's sets have no points on border 1
+     */
+    private static final double[][] SKIP_MANUAL_DATA_SETS = {
+            {0.24277906389712256, 0.7288499200744581, 0.32330609761165474, 0.8583650947555813, 0.12094814223373274, 0.44575684846814223},
+            {0, 0, 0.5, 0.5, 0, 0.5, 0.5, 0},
+    };
+    private static final int CLUSTER_TEST_COUNT = 2000;
+    private static final int COMPACTION_TEST_COUNT = 10000;
+    private static final int READER_COUNT = 8;
+    private static final int POINTS_PER_READER = 5000;
+
+    public void testCompressedRandom() {
+        log.info("Testing random points on compressed quad tree");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testQuadTree(new PooledCompressedQuadTree(prec), ps)));
+    }
+
+    public void testSkipRandom() {
+        log.info("Testing random points on skip quad tree");
+        testOnCoins(coin -> testOnPrecisions(prec -> testRandomPoints(ps -> testQuadTree(new PooledSkipQuadTree(coin, prec), ps))));
+    }
+
+    public void testManual() {
+        log.info("Testing manually set point sets");
+        testOnPrecisions(prec -> testManual(ps -> testQuadTree(new PooledCompressedQuadTree(prec), ps), MANUAL_DATA_SETS));
+        testOnCoins(coin -> testOnPrecisions(prec -> testManual(ps -> testQuadTree(new PooledSkipQuadTree(coin, prec), ps), SKIP_MANUAL_DATA_SETS)));
+    }
+
+    public void testCluster() {
+        log.info("Testing clustered points");
+        List<Point2d> points = genClusteredPoints(CLUSTER_TEST_COUNT);
+        testOnPrecisions(prec -> testQuadTree(new PooledCompressedQuadTree(prec), points));
+        testOnPrecisions(prec -> testQuadTree(new PooledSkipQuadTree(null, prec), points));
+    }
+
+    /**
+     * Lookups don't write shared state of tree, so they may be run concurrently
+     */
+    public void testConcurrentReaders() throws Exception {
+        log.info("Testing concurrent readers on skip quad tree");
+        PooledSkipQuadTree quadTree = new PooledSkipQuadTree();
+        List<Point2d> points = new ArrayList<>();
+        for (int i = 0; i < READER_COUNT * POINTS_PER_READER; ++i) {
+            Point2d point = genRandomPoint();
+            if (quadTree.add(point)) {
+                points.add(point);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(READER_COUNT);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < READER_COUNT; ++i) {
+                futures.add(executor.submit(() -> {
+                    for (Point2d point : points) {
+                        assertTrue(quadTree.contains(point));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testCompaction() {
+        log.info("Testing compaction");
+        testRandomPoints(ps -> testCompaction(new PooledCompressedQuadTree(), ps), COMPACTION_TEST_COUNT, 1);
+        testRandomPoints(ps -> testCompaction(new PooledSkipQuadTree(), ps), COMPACTION_TEST_COUNT, 1);
+    }
+
+    Void testCompaction(QuadTree quadTree, List<Point2d> points) {
+        for (Point2d point : points) {
+            assertTrue(quadTree.add(point));
+        }
+        List<Point2d> remaining = new ArrayList<>();
+        for (int i = 0; i < points.size(); ++i) {
+            if (i % 4 == 0) {
+                remaining.add(points.get(i));
+            } else {
+                assertTrue(quadTree.remove(points.get(i)));
+            }
+        }
+        checkRangeQueries(quadTree, remaining);
+        for (Point2d point : remaining) {
+            assertTrue(quadTree.remove(point));
+        }
+        return testQuadTree(quadTree, points);
+    }
+
+}
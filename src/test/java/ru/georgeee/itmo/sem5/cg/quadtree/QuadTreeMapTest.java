@@ -0,0 +1,114 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class QuadTreeMapTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(QuadTreeMapTest.class);
+    private static final int QUERY_COUNT = 20;
+    private static final int MAX_VALUE = 1000;
+
+    public void testRandom() {
+        log.info("Testing quad tree map on random points");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testMap(ps, prec)));
+    }
+
+    public void testCount() {
+        QuadTreeMap<String, Integer> map = new QuadTreeMap<>(Aggregator.count());
+        assertEquals(0, (int) map.aggregate());
+        assertNull(map.put(new Point2d(0.25, 0.25), "a"));
+        assertNull(map.put(new Point2d(0.75, 0.75), "b"));
+        assertEquals("a", map.put(new Point2d(0.25, 0.25), "c"));
+        assertEquals(2, map.size());
+        assertEquals(2, (int) map.aggregate());
+        assertEquals(1, (int) map.rangeAggregate(new Point2d(0, 0), new Point2d(0.5, 0.5)));
+        assertEquals("c", map.get(new Point2d(0.25, 0.25)));
+        assertEquals("c", map.remove(new Point2d(0.25, 0.25)));
+        assertNull(map.remove(new Point2d(0.25, 0.25)));
+        assertFalse(map.containsKey(new Point2d(0.25, 0.25)));
+        assertEquals(1, (int) map.aggregate());
+    }
+
+    /**
+     * Puts, updates and removes random values, comparing sums and maxima of range aggregates with brute force
+     */
+    private Void testMap(List<Point2d> points, double precision) {
+        QuadTreeMap<Integer, Integer> sums = new QuadTreeMap<>(Aggregator.of(0, Integer::sum), precision);
+        QuadTreeMap<Integer, Integer> maxima = new QuadTreeMap<>(Aggregator.of(Integer.MIN_VALUE, Math::max), precision);
+        Map<Point2d, Integer> expected = new HashMap<>();
+        List<Point2d> keys = new ArrayList<>();
+        for (Point2d point : points) {
+            int value = random.nextInt(MAX_VALUE);
+            Point2d key = findEqual(keys, point, precision);
+            if (key == null) {
+                keys.add(point);
+                key = point;
+            }
+            assertEquals(expected.put(key, value), sums.put(point, value));
+            maxima.put(point, value);
+        }
+        checkAggregates(sums, maxima, expected);
+        for (int i = 0; i < keys.size(); i += 2) {
+            Point2d key = keys.get(i);
+            if (i % 4 == 0) {
+                assertEquals(expected.remove(key), sums.remove(key));
+                maxima.remove(key);
+                assertNull(sums.get(key));
+            } else {
+                int value = random.nextInt(MAX_VALUE);
+                assertEquals(expected.put(key, value), sums.put(key, value));
+                maxima.put(key, value);
+            }
+        }
+        checkAggregates(sums, maxima, expected);
+        return null;
+    }
+
+    private void checkAggregates(QuadTreeMap<Integer, Integer> sums, QuadTreeMap<Integer, Integer> maxima, Map<Point2d, Integer> expected) {
+        assertEquals(expected.size(), sums.size());
+        for (Map.Entry<Point2d, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), sums.get(entry.getKey()));
+        }
+        for (int i = 0; i < QUERY_COUNT; ++i) {
+            Point2d a = genRandomPoint();
+            Point2d b = genRandomPoint();
+            Point2d topLeft = new Point2d(Math.min(a.getX(), b.getX()), Math.min(a.getY(), b.getY()));
+            Point2d bottomRight = new Point2d(Math.max(a.getX(), b.getX()), Math.max(a.getY(), b.getY()));
+            int sum = 0, max = Integer.MIN_VALUE;
+            Map<Point2d, Integer> inside = new HashMap<>();
+            for (Map.Entry<Point2d, Integer> entry : expected.entrySet()) {
+                Point2d point = entry.getKey();
+                if (PointSector.isWithin(point, topLeft.getX(), topLeft.getY(), bottomRight.getX(), bottomRight.getY())) {
+                    sum += entry.getValue();
+                    max = Math.max(max, entry.getValue());
+                    inside.put(point, entry.getValue());
+                }
+            }
+            assertEquals(sum, (int) sums.rangeAggregate(topLeft, bottomRight));
+            assertEquals(max, (int) maxima.rangeAggregate(topLeft, bottomRight));
+            Map<Point2d, Integer> reported = new HashMap<>();
+            sums.rangeQuery(topLeft, bottomRight, (p, v) -> assertNull(reported.put(p, v)));
+            assertEquals(inside, reported);
+        }
+        int total = 0;
+        for (int value : expected.values()) {
+            total += value;
+        }
+        assertEquals(total, (int) sums.aggregate());
+    }
+
+    private static Point2d findEqual(List<Point2d> keys, Point2d point, double precision) {
+        for (Point2d key : keys) {
+            if (BoxSector.checkEquals(key, point, precision)) {
+                return key;
+            }
+        }
+        return null;
+    }
+}
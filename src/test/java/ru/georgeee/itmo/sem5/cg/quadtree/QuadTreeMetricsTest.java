@@ -0,0 +1,120 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+public class QuadTreeMetricsTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(QuadTreeMetricsTest.class);
+    private static final int POINT_COUNT = 1000;
+
+    public void testSkip() {
+        log.info("Testing metrics of skip quad tree");
+        SkipQuadTree skipQuadTree = new SkipQuadTree();
+        InstrumentedQuadTree quadTree = new InstrumentedQuadTree(skipQuadTree);
+        List<Point2d> points = addPoints(quadTree);
+        QuadTreeMetrics.Snapshot snapshot = quadTree.getMetrics().snapshot();
+        assertEquals(skipQuadTree.layers.size(), snapshot.getLayerCount());
+        for (int i = 0; i < snapshot.getLayerCount(); ++i) {
+            assertEquals(skipQuadTree.layers.get(i).getSize(), snapshot.getPointsPerLayer()[i]);
+        }
+        assertEquals(points.size(), snapshot.getPointsPerLayer()[0]);
+        assertEquals(points.size(), sum(snapshot.getDepthHistogram()));
+        assertTrue(snapshot.getBoxCount() >= snapshot.getLayerCount());
+        //Every point is promoted to the next layer on heads and stops on the first tails
+        assertEquals(sum(snapshot.getPointsPerLayer()) - points.size(), snapshot.getCoinHeads());
+        assertEquals(points.size(), snapshot.getCoinTails());
+        assertTrue(snapshot.getPredecessorSearches() > 0);
+        assertTrue(snapshot.getAveragePredecessorCells() >= 1);
+        checkOperations(quadTree, snapshot, points);
+    }
+
+    public void testCompressed() {
+        log.info("Testing metrics of compressed quad tree");
+        InstrumentedQuadTree quadTree = new InstrumentedQuadTree(new CompressedQuadTree());
+        List<Point2d> points = addPoints(quadTree);
+        QuadTreeMetrics.Snapshot snapshot = quadTree.getMetrics().snapshot();
+        assertEquals(1, snapshot.getLayerCount());
+        assertEquals(points.size(), snapshot.getPointsPerLayer()[0]);
+        assertEquals(points.size(), sum(snapshot.getDepthHistogram()));
+        //Every box has from 2 to 4 sub sectors
+        assertTrue(snapshot.getBoxCount() <= points.size() - 1);
+        assertTrue(3 * snapshot.getBoxCount() >= points.size() - 1);
+        assertEquals(0, snapshot.getPredecessorSearches());
+        checkOperations(quadTree, snapshot, points);
+    }
+
+    public void testDisabled() {
+        InstrumentedQuadTree quadTree = new InstrumentedQuadTree(new SkipQuadTree());
+        quadTree.getMetrics().setEnabled(false);
+        addPoints(quadTree);
+        QuadTreeMetrics.Snapshot snapshot = quadTree.getMetrics().snapshot();
+        assertEquals(0, (long) snapshot.getOperationCounts().get(QuadTreeMetrics.Operation.ADD));
+        assertEquals(0, snapshot.getPredecessorSearches());
+        assertEquals(0, snapshot.getCoinHeads() + snapshot.getCoinTails());
+        assertEquals(POINT_COUNT, snapshot.getPointsPerLayer()[0]);
+    }
+
+    public void testMBean() throws Exception {
+        InstrumentedQuadTree quadTree = new InstrumentedQuadTree(new SkipQuadTree());
+        addPoints(quadTree);
+        ObjectName name = quadTree.getMetrics().register("test");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(quadTree.getMetrics().getLayerCount(), server.getAttribute(name, "LayerCount"));
+            assertEquals(quadTree.getMetrics().getCoinHeads(), server.getAttribute(name, "CoinHeads"));
+            assertNotNull(server.getAttribute(name, "LatencyHistograms"));
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertEquals(0L, server.getAttribute(name, "PredecessorSearches"));
+        } finally {
+            quadTree.getMetrics().unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    private List<Point2d> addPoints(QuadTree quadTree) {
+        List<Point2d> points = new ArrayList<>();
+        for (int i = 0; i < POINT_COUNT; ++i) {
+            Point2d point = genRandomPoint();
+            assertTrue(quadTree.add(point));
+            points.add(point);
+        }
+        return points;
+    }
+
+    private void checkOperations(QuadTree quadTree, QuadTreeMetrics.Snapshot snapshot, List<Point2d> points) {
+        assertEquals(points.size(), (long) snapshot.getOperationCounts().get(QuadTreeMetrics.Operation.ADD));
+        assertEquals(points.size(), sum(snapshot.getLatencyHistograms().get(QuadTreeMetrics.Operation.ADD)));
+        assertTrue(snapshot.getMeanLatencies().get(QuadTreeMetrics.Operation.ADD) > 0);
+        assertEquals(0, (long) snapshot.getOperationCounts().get(QuadTreeMetrics.Operation.CONTAINS));
+        for (Point2d point : points) {
+            assertTrue(quadTree.contains(point));
+        }
+        quadTree.rangeCount(new Point2d(0, 0), new Point2d(1, 1));
+        snapshot = ((InstrumentedQuadTree) quadTree).getMetrics().snapshot();
+        assertEquals(points.size(), (long) snapshot.getOperationCounts().get(QuadTreeMetrics.Operation.CONTAINS));
+        assertEquals(1, (long) snapshot.getOperationCounts().get(QuadTreeMetrics.Operation.RANGE_COUNT));
+    }
+
+    private static long sum(int[] values) {
+        long sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
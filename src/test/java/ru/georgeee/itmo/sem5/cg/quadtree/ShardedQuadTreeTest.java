@@ -0,0 +1,131 @@
+package ru.georgeee.itmo.sem5.cg.quadtree;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class ShardedQuadTreeTest extends AbstractTest {
+    private static final Logger log = LoggerFactory.getLogger(ShardedQuadTreeTest.class);
+    private static final int SHARD_DEPTH = 2;
+    private static final int THREAD_COUNT = 8;
+    private static final int POINTS_PER_THREAD = 5000;
+    private static final double[][] MANUAL_DATA_SETS = {
+            {0, 0, 1, 1, 0.5, 0.5, 0, 1, 1, 0, 1, 0.3, 0.3, 1, 0.9, 1, 1, 0.8, 0.2, 0.1},
+    };
+
+    public void testCompressedRandom() {
+        log.info("Testing random points on compressed shards");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testQuadTree(new ShardedQuadTree(SHARD_DEPTH, prec, () -> new CompressedQuadTree(prec)), ps)));
+    }
+
+    public void testSkipRandom() {
+        log.info("Testing random points on skip shards");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testQuadTree(new ShardedQuadTree(SHARD_DEPTH, prec, () -> new SkipQuadTree(null, prec)), ps)));
+    }
+
+    /**
+     * Points with coordinate 1 are reported after the rest of their shards in Z-order
+     */
+    public void testManual() {
+        log.info("Testing points on borders of the unit square");
+        testOnPrecisions(prec -> testManual(ps -> testQuadTree(new ShardedQuadTree(SHARD_DEPTH, prec, () -> new CompressedQuadTree(prec)), ps), MANUAL_DATA_SETS));
+        testOnPrecisions(prec -> testManual(ps -> testQuadTree(new ShardedQuadTree(SHARD_DEPTH, prec, () -> new LinearQuadTree(prec)), ps), MANUAL_DATA_SETS));
+    }
+
+    public void testLinearRandom() {
+        log.info("Testing random points on linear shards");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testQuadTree(new ShardedQuadTree(SHARD_DEPTH, prec, () -> new LinearQuadTree(prec)), ps)));
+    }
+
+    /**
+     * Stream is created before shards are changed, so it may deliver another number of points than it counted
+     */
+    public void testChangeBeforeTraversal() {
+        log.info("Testing changes between creation and traversal of stream");
+        ShardedQuadTree quadTree = new ShardedQuadTree(SHARD_DEPTH, 0, CompressedQuadTree::new);
+        List<Point2d> points = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            points.add(genRandomPoint());
+        }
+        quadTree.addAll(points.subList(0, 50));
+        Stream<Point2d> grown = quadTree.stream();
+        quadTree.addAll(points.subList(50, 100));
+        assertEquals(100, grown.toArray().length);
+        Stream<Point2d> shrunk = quadTree.stream().parallel();
+        quadTree.removeAll(points.subList(0, 70));
+        assertEquals(30, shrunk.toArray().length);
+    }
+
+    public void testIllegalDepth() {
+        try {
+            new ShardedQuadTree(4, 0.1, CompressedQuadTree::new);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    public void testConcurrentWriters() throws Exception {
+        log.info("Testing concurrent writers");
+        ShardedQuadTree quadTree = new ShardedQuadTree(SHARD_DEPTH, 0, CompressedQuadTree::new);
+        List<Point2d> points = new ArrayList<>();
+        for (int i = 0; i < THREAD_COUNT * POINTS_PER_THREAD; ++i) {
+            points.add(genRandomPoint());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREAD_COUNT; ++i) {
+                List<Point2d> part = points.subList(i * POINTS_PER_THREAD, (i + 1) * POINTS_PER_THREAD);
+                futures.add(executor.submit(() -> part.forEach(p -> assertTrue(quadTree.add(p)))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        checkRangeQueries(quadTree, points);
+        for (Point2d point : points) {
+            assertTrue(quadTree.remove(point));
+        }
+    }
+
+    /**
+     * Reads of shard are done under shared lock, so they shouldn't modify shard tree
+     */
+    public void testConcurrentReaders() throws Exception {
+        log.info("Testing concurrent readers on skip shards");
+        ShardedQuadTree quadTree = new ShardedQuadTree(SHARD_DEPTH, 0, SkipQuadTree::new);
+        List<Point2d> points = new ArrayList<>();
+        for (int i = 0; i < THREAD_COUNT * POINTS_PER_THREAD; ++i) {
+            Point2d point = genRandomPoint();
+            points.add(point);
+            assertTrue(quadTree.add(point));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREAD_COUNT; ++i) {
+                futures.add(executor.submit(() -> {
+                    for (Point2d point : points) {
+                        assertTrue(quadTree.contains(point));
+                    }
+                    Point2d query = genRandomPoint();
+                    assertEquals(NEAREST_COUNTS[1], quadTree.nearest(query, NEAREST_COUNTS[1]).size());
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
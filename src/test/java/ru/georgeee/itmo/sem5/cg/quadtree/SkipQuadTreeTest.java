@@ -2,12 +2,23 @@ package ru.georgeee.itmo.sem5.cg.quadtree;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.georgeee.itmo.sem5.cg.common.Point2d;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class SkipQuadTreeTest extends AbstractTest {
     private static final Logger log = LoggerFactory.getLogger(SkipQuadTreeTest.class);
     private static final double[][] MANUAL_DATA_SETS = {
             {0.24277906389712256, 0.7288499200744581, 0.32330609761165474, 0.8583650947555813, 0.12094814223373274, 0.44575684846814223},
     };
+    private static final double[] NEAREST_APPROX_EPS = {0, 0.01, 0.5, 2};
+    private static final int NEAREST_APPROX_QUERIES = 20;
+    private static final double[] RANGE_COUNT_APPROX_EPS = {0, 0.01, 0.1, 1};
+    private static final int RANGE_COUNT_APPROX_QUERIES = 20;
+    private static final int PARALLEL_BUILD_COUNT = 50000;
 
     public void testRandom() {
         log.info("Testing random points");
@@ -19,4 +30,162 @@ public class SkipQuadTreeTest extends AbstractTest {
         testOnCoins(coin -> testOnPrecisions(prec -> testManual(ps -> testSkipQuadTree(ps, prec, coin), MANUAL_DATA_SETS)));
     }
 
+    public void testBatch() {
+        log.info("Testing batch operations");
+        testOnCoins(coin -> testOnPrecisions(prec -> testRandomPoints(ps -> testBatch(ps, prec, coin))));
+    }
+
+    Void testBatch(List<Point2d> points, double precision, Coin coin) {
+        SkipQuadTree expected = new SkipQuadTree(null, precision);
+        List<Point2d> input = new ArrayList<>(points);
+        input.add(new Point2d(0, 0));
+        for (int i = 0; i < points.size() / 3; ++i) {
+            input.add(points.get(random.nextInt(points.size())));
+        }
+        //Of equal points, the first one in Z-order is kept
+        Point2d[] array = input.toArray(new Point2d[input.size()]);
+        int expectedAdded = 0;
+        List<Point2d> addedPoints = new ArrayList<>();
+        for (int index : MortonOrder.sortedOrder(array)) {
+            Point2d point = array[index];
+            if (expected.add(point)) {
+                expectedAdded++;
+                addedPoints.add(point);
+            }
+        }
+        SkipQuadTree quadTree = new SkipQuadTree(coin, precision);
+        assertEquals(expectedAdded, quadTree.addAll(input));
+        assertEquals(0, quadTree.addAll(input));
+        assertTrue(quadTree.containsAll(input));
+        validateSkipQuadTree(quadTree);
+        checkRangeQueries(quadTree, addedPoints);
+        List<Point2d> removedPoints = addedPoints.subList(0, addedPoints.size() / 2);
+        assertEquals(removedPoints.size(), quadTree.removeAll(removedPoints));
+        assertEquals(0, quadTree.removeAll(removedPoints));
+        validateSkipQuadTree(quadTree);
+        List<Point2d> remaining = addedPoints.subList(addedPoints.size() / 2, addedPoints.size());
+        assertTrue(quadTree.containsAll(remaining));
+        assertEquals(removedPoints.isEmpty(), quadTree.containsAll(removedPoints));
+        checkRangeQueries(quadTree, remaining);
+        return null;
+    }
+
+    public void testParallelBuild() {
+        log.info("Testing parallel build");
+        testOnPrecisions(prec -> testRandomPoints(ps -> testParallelBuild(ps, prec)));
+        List<Point2d> points = genClusteredPoints(PARALLEL_BUILD_COUNT);
+        testOnPrecisions(prec -> testParallelBuild(points, prec));
+    }
+
+    Void testParallelBuild(List<Point2d> points, double precision) {
+        List<Point2d> input = new ArrayList<>(points);
+        input.add(new Point2d(0, 0));
+        for (int i = 0; i < points.size() / 3; ++i) {
+            input.add(points.get(random.nextInt(points.size())));
+        }
+        //Coin depends only on point, so towers are the same in both trees
+        Coin coin = (layer, point) -> mix(31L * point.hashCode() + layer) < 0;
+        SkipQuadTree expected = new SkipQuadTree(coin, precision);
+        List<Point2d> addedPoints = new ArrayList<>();
+        for (Point2d point : input) {
+            if (expected.add(point)) {
+                addedPoints.add(point);
+            }
+        }
+        SkipQuadTree quadTree = new SkipQuadTree(input, coin, precision);
+        validateSkipQuadTree(quadTree);
+        assertEquals(expected.layers.size(), quadTree.layers.size());
+        for (int i = 0; i < expected.layers.size(); ++i) {
+            Set<Point2d> expectedLayer = new HashSet<>(), layer = new HashSet<>();
+            expected.layers.get(i).forEachPoint(expectedLayer::add);
+            quadTree.layers.get(i).forEachPoint(layer::add);
+            assertEquals(expectedLayer, layer);
+        }
+        checkRangeQueries(quadTree, addedPoints);
+        List<Point2d> removedPoints = addedPoints.subList(0, addedPoints.size() / 2);
+        for (Point2d point : removedPoints) {
+            assertTrue(quadTree.remove(point));
+        }
+        validateSkipQuadTree(quadTree);
+        checkRangeQueries(quadTree, addedPoints.subList(addedPoints.size() / 2, addedPoints.size()));
+        return null;
+    }
+
+    /**
+     * Finalizer of MurmurHash3
+     */
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    public void testCursor() {
+        log.info("Testing cursor");
+        testOnCoins(coin -> testOnPrecisions(prec -> {
+            SkipQuadTree quadTree = new SkipQuadTree(coin, prec);
+            checkCursor(quadTree, quadTree.cursor(), new CompressedQuadTree(prec), () -> {
+            });
+            validateSkipQuadTree(quadTree);
+            return null;
+        }));
+    }
+
+    public void testNearestApprox() {
+        log.info("Testing approximate nearest points");
+        testOnCoins(coin -> testOnPrecisions(prec -> testRandomPoints(ps -> testNearestApprox(ps, prec, coin))));
+    }
+
+    Void testNearestApprox(List<Point2d> points, double precision, Coin coin) {
+        SkipQuadTree quadTree = new SkipQuadTree(coin, precision);
+        List<Point2d> addedPoints = new ArrayList<>();
+        for (Point2d point : points) {
+            if (quadTree.add(point)) {
+                addedPoints.add(point);
+            }
+        }
+        for (int i = 0; i < NEAREST_APPROX_QUERIES; ++i) {
+            Point2d query = new Point2d(random.nextDouble() * 1.2 - 0.1, random.nextDouble() * 1.2 - 0.1);
+            double nearestDist = Double.POSITIVE_INFINITY;
+            for (Point2d point : addedPoints) {
+                nearestDist = Math.min(nearestDist, Math.sqrt(point.distanceSq(query)));
+            }
+            for (double eps : NEAREST_APPROX_EPS) {
+                Point2d approx = quadTree.nearestApprox(query, eps);
+                assertTrue(addedPoints.contains(approx));
+                assertTrue(Math.sqrt(approx.distanceSq(query)) <= nearestDist * (1 + eps) + 1e-12);
+            }
+        }
+        return null;
+    }
+
+    public void testRangeCountApprox() {
+        log.info("Testing approximate range count");
+        testOnCoins(coin -> testOnPrecisions(prec -> testRandomPoints(ps -> testRangeCountApprox(ps, prec, coin))));
+    }
+
+    Void testRangeCountApprox(List<Point2d> points, double precision, Coin coin) {
+        SkipQuadTree quadTree = new SkipQuadTree(coin, precision);
+        for (Point2d point : points) {
+            quadTree.add(point);
+        }
+        for (int i = 0; i < RANGE_COUNT_APPROX_QUERIES; ++i) {
+            Point2d a = genRandomPoint();
+            Point2d b = genRandomPoint();
+            double x1 = Math.min(a.getX(), b.getX()), y1 = Math.min(a.getY(), b.getY());
+            double x2 = Math.max(a.getX(), b.getX()), y2 = Math.max(a.getY(), b.getY());
+            int exact = quadTree.rangeCount(new Point2d(x1, y1), new Point2d(x2, y2));
+            for (double eps : RANGE_COUNT_APPROX_EPS) {
+                double slack = eps * Math.max(x2 - x1, y2 - y1);
+                int upper = quadTree.rangeCount(new Point2d(x1 - slack, y1 - slack), new Point2d(x2 + slack, y2 + slack));
+                int approx = quadTree.rangeCountApprox(new Point2d(x1, y1), new Point2d(x2, y2), eps);
+                assertTrue(exact <= approx && approx <= upper);
+                if (eps == 0) {
+                    assertEquals(exact, approx);
+                }
+            }
+        }
+        return null;
+    }
+
 }